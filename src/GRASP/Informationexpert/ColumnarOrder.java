@@ -0,0 +1,78 @@
+package GRASP.Informationexpert;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+// An Order kept as two arrays, the prices and the quantities of its items,
+// instead of a list of LineItem objects that each point to a Product. The
+// total reads both arrays from start to end, so for large orders it does not
+// jump from object to object in memory.
+class ColumnarOrder {
+    private double[] prices;
+    private int[] quantities;
+    private int size;
+
+    public ColumnarOrder(List<LineItem> items) {
+        prices = new double[Math.max(items.size(), 8)];
+        quantities = new int[prices.length];
+        for (LineItem item : items) {
+            add(item.getProduct().getPrice(), item.getQuantity());
+        }
+    }
+
+    public void add(double price, int quantity) {
+        if (size == prices.length) {
+            prices = Arrays.copyOf(prices, size * 2);
+            quantities = Arrays.copyOf(quantities, size * 2);
+        }
+        prices[size] = price;
+        quantities[size] = quantity;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Four sums at the same time, so each addition does not have to wait for
+    // the one before it. The result can differ from
+    // Order.totalPrice in the last digits, because the order of the
+    // additions differs.
+    public double totalPrice() {
+        double sum0 = 0;
+        double sum1 = 0;
+        double sum2 = 0;
+        double sum3 = 0;
+        int i = 0;
+        for (; i + 3 < size; i += 4) {
+            sum0 += prices[i] * quantities[i];
+            sum1 += prices[i + 1] * quantities[i + 1];
+            sum2 += prices[i + 2] * quantities[i + 2];
+            sum3 += prices[i + 3] * quantities[i + 3];
+        }
+        for (; i < size; i++) {
+            sum0 += prices[i] * quantities[i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    // The items as LineItem objects, for code that works with Order. They are
+    // created when they are read.
+    public List<LineItem> items() {
+        return new AbstractList<LineItem>() {
+            @Override
+            public LineItem get(int index) {
+                if (index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+                }
+                return new LineItem(new Product(prices[index]), quantities[index]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,24 @@
+package GRASP.Informationexpert;
+
+// LineItem is the expert on how to calculate its price.
+class LineItem {
+    private Product product;
+    private int quantity;
+
+    public LineItem(Product product, int quantity) {
+        this.product = product;
+        this.quantity = quantity;
+    }
+
+    public double totalPrice() {
+        return product.getPrice() * quantity;
+    }
+
+    Product getProduct() {
+        return product;
+    }
+
+    int getQuantity() {
+        return quantity;
+    }
+}
@@ -1,45 +1,78 @@
 package GRASP.Informationexpert;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-class Product {
-    private double price;
+// Order is the expert on combining these totals. It keeps its total up to
+// date as items are added, removed or change quantity, so reading it does not
+// go through all the items again.
+class Order {
+    private List<LineItem> items;
+    // The total is sum + compensation: compensation collects the low digits
+    // that are lost when adding a small price to a large sum (Neumaier), so
+    // many changes do not make the total drift.
+    private double sum;
+    private double compensation;
 
-    public Product(double price) {
-        this.price = price;
+    public Order(List<LineItem> items) {
+        this.items = new ArrayList<>(items);
+        for (LineItem item : this.items) {
+            add(item.totalPrice());
+        }
     }
 
-    public double getPrice() {
-        return price;
+    public void addItem(LineItem item) {
+        items.add(item);
+        add(item.totalPrice());
     }
-}
 
-// LineItem is the expert on how to calculate its price.
-class LineItem {
-    private Product product;
-    private int quantity;
-
-    public LineItem(Product product, int quantity) {
-        this.product = product;
-        this.quantity = quantity;
+    // Removes this LineItem object (not an equal one) by searching the list,
+    // so it takes time proportional to the number of items.
+    public boolean removeItem(LineItem item) {
+        if (!items.remove(item)) {
+            return false;
+        }
+        if (items.isEmpty()) {
+            sum = 0;
+            compensation = 0;
+        } else {
+            add(-item.totalPrice());
+        }
+        return true;
     }
 
-    public double totalPrice() {
-        return product.getPrice() * quantity;
+    public void setQuantity(int index, int quantity) {
+        LineItem old = items.get(index);
+        LineItem item = new LineItem(old.getProduct(), quantity);
+        items.set(index, item);
+        // Two compensated additions, so the rounding of the difference is compensated too.
+        add(item.totalPrice());
+        add(-old.totalPrice());
     }
-}
 
-// Order is the expert on combining these totals.
-class Order {
-    private List<LineItem> items;
-
-    public Order(List<LineItem> items) {
-        this.items = items;
+    public List<LineItem> getItems() {
+        return Collections.unmodifiableList(items);
     }
 
     public double totalPrice() {
+        return sum + compensation;
+    }
+
+    // Adds up all the items again, to check totalPrice.
+    double sumItems() {
         return items.stream()
                 .mapToDouble(LineItem::totalPrice)
                 .sum();
     }
+
+    private void add(double value) {
+        double total = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - total) + value;
+        } else {
+            compensation += (value - total) + sum;
+        }
+        sum = total;
+    }
 }
@@ -0,0 +1,38 @@
+package GRASP.Informationexpert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// Compares adding up the items of an Order (Order.sumItems) with
+// ColumnarOrder.totalPrice for one large order.
+// Arguments: number of items (default 1000000), rounds (default 20).
+public class OrderPricingBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Random random = new Random(42);
+        List<LineItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new LineItem(new Product(random.nextInt(10_000) / 100.0), 1 + random.nextInt(10)));
+        }
+        // Scatter the objects in memory like in a long running application.
+        Collections.shuffle(items, random);
+
+        Order order = new Order(items);
+        ColumnarOrder columnarOrder = new ColumnarOrder(items);
+
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            double objects = order.sumItems();
+            long middle = System.nanoTime();
+            double columns = columnarOrder.totalPrice();
+            long end = System.nanoTime();
+            System.out.printf("Order.sumItems %8.3f ms   ColumnarOrder %8.3f ms   totals %.2f %.2f%n",
+                    (middle - start) / 1e6, (end - middle) / 1e6, objects, columns);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package GRASP.Informationexpert;
+
+class Product {
+    private double price;
+
+    public Product(double price) {
+        this.price = price;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+}
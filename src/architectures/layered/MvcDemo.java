@@ -2,8 +2,12 @@ package architectures.layered;
 
 import architectures.layered.controler.UserController;
 import architectures.layered.model.User;
+import architectures.layered.model.UserRepository;
 import architectures.layered.view.UserView;
 
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * User represents the Model, which stores the data and state of the
  * application.
@@ -12,6 +16,8 @@ import architectures.layered.view.UserView;
  * UserController represents the Controller, which manages the communication
  * between the Model and View. It updates the Model with new data and instructs
  * the View to display the updated data.
+ * UserRepository keeps many users, which the UserController creates, updates
+ * and finds in bulk.
  */
 public class MvcDemo {
     public static void main(String[] args) {
@@ -21,16 +27,28 @@ public class MvcDemo {
         // Create a UserView
         UserView view = new UserView();
 
-        // Create a UserController and associate the model and view
-        UserController controller = new UserController(model, view);
+        // Create a UserController and associate the model, view and repository
+        UserController controller = new UserController(model, view, new UserRepository());
 
         // Display the initial user information
         controller.updateUserView();
 
         // Update the user information through the controller
+        controller.setUserName("Janet", "Doe");
         controller.setUserName("Jane", "Doe");
 
-        // Display the updated user information
+        // Display the updated user information, only the first name changed
         controller.updateUserView();
+
+        // Store several users at once and find them by last name
+        List<User> created = controller.createUsers(Arrays.asList(
+                new User("John", "Doe"), new User("Jane", "Doe"), new User("Max", "Mustermann")));
+        controller.updateUsers(Arrays.asList(new User(created.get(1).getId(), "Janet", "Doe")));
+        for (User user : controller.findUsersByLastName("do", 10)) {
+            view.printUserDetails(user.getFirstName(), user.getLastName());
+        }
+
+        // Display each created or updated user once
+        controller.refreshUsers();
     }
 }
@@ -1,15 +1,34 @@
 package architectures.layered.controler;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import architectures.layered.model.User;
+import architectures.layered.model.UserRepository;
 import architectures.layered.view.UserView;
 
 public class UserController {
     private User model;
     private UserView view;
+    private UserRepository repository;
+    // Ids of the repository users created or updated since refreshUsers.
+    private final Set<Long> changedUsers = ConcurrentHashMap.newKeySet();
 
     public UserController(User model, UserView view) {
+        this(model, view, new UserRepository());
+    }
+
+    /**
+     * A controller for one current user (model), that also manages all the
+     * users of the repository.
+     */
+    public UserController(User model, UserView view, UserRepository repository) {
         this.model = model;
         this.view = view;
+        this.repository = repository;
     }
 
     public void setUserName(String firstName, String lastName) {
@@ -25,7 +44,74 @@ public class UserController {
         return model.getLastName();
     }
 
+    /**
+     * Shows the fields of the user that changed since the last call, or
+     * nothing if none did. Call it once per frame or tick: several
+     * setUserName calls in between are shown as one change.
+     */
     public void updateUserView() {
-        view.printUserDetails(model.getFirstName(), model.getLastName());
+        if (show(model)) {
+            model.clearChanges();
+        }
+    }
+
+    // Shows the changed fields of the user, returns false if there are none.
+    private boolean show(User user) {
+        int changed = user.getChangedFields();
+        if (changed == 0) {
+            return false;
+        }
+        if (changed == (User.FIRST_NAME | User.LAST_NAME)) {
+            view.printUserDetails(user.getFirstName(), user.getLastName());
+        } else {
+            view.printUserChanges(user.isChanged(User.FIRST_NAME) ? user.getFirstName() : null,
+                    user.isChanged(User.LAST_NAME) ? user.getLastName() : null);
+        }
+        return true;
+    }
+
+    /** Stores the users with new ids and returns them. */
+    public List<User> createUsers(Collection<User> users) {
+        List<User> created = repository.createAll(users);
+        for (User user : created) {
+            changedUsers.add(user.getId());
+        }
+        return created;
+    }
+
+    /** Stores the new names of the users with their ids, returns how many. */
+    public int updateUsers(Collection<User> users) {
+        int updated = repository.updateAll(users);
+        for (User user : users) {
+            changedUsers.add(user.getId());
+        }
+        return updated;
+    }
+
+    /**
+     * Shows the changed fields of the repository users created or updated
+     * since the last call, each once however often it changed, and returns
+     * how many were shown.
+     */
+    public int refreshUsers() {
+        int shown = 0;
+        for (Iterator<Long> ids = changedUsers.iterator(); ids.hasNext();) {
+            long id = ids.next();
+            ids.remove();
+            User user = repository.findById(id);
+            if (user != null && show(user)) {
+                repository.clearChanges(id, user.getVersion());
+                shown++;
+            }
+        }
+        return shown;
+    }
+
+    public User findUser(long id) {
+        return repository.findById(id);
+    }
+
+    public List<User> findUsersByLastName(String prefix, int limit) {
+        return repository.findByLastNamePrefix(prefix, limit);
     }
 }
@@ -1,20 +1,63 @@
 package architectures.layered.model;
 
+import java.util.Objects;
+
+/**
+ * A user with a first and a last name.
+ * 
+ * The user remembers which fields changed since clearChanges was called, so a
+ * view only has to show those, and counts every change in its version. A new
+ * user counts as changed in all fields, since it has not been shown yet.
+ */
 public class User {
+    public static final int FIRST_NAME = 1;
+    public static final int LAST_NAME = 2;
+
+    private final long id;
     private String firstName;
     private String lastName;
+    private int changedFields = FIRST_NAME | LAST_NAME;
+    private long version;
 
     public User(String firstName, String lastName) {
+        this(0, firstName, lastName);
+    }
+
+    /**
+     * A user with the id it has in a UserRepository. Users that are not
+     * stored have the id 0.
+     */
+    public User(long id, String firstName, String lastName) {
+        this.id = id;
         this.firstName = firstName;
         this.lastName = lastName;
     }
 
+    /** A user loaded from storage: it has the stored version and no changes. */
+    public User(long id, String firstName, String lastName, long version) {
+        this(id, firstName, lastName, version, 0);
+    }
+
+    /** A user with a given version and changed fields, for copies. */
+    protected User(long id, String firstName, String lastName, long version, int changedFields) {
+        this(id, firstName, lastName);
+        this.version = version;
+        this.changedFields = changedFields;
+    }
+
+    public long getId() {
+        return id;
+    }
+
     public String getFirstName() {
         return firstName;
     }
 
     public void setFirstName(String firstName) {
-        this.firstName = firstName;
+        if (!Objects.equals(this.firstName, firstName)) {
+            this.firstName = firstName;
+            changed(FIRST_NAME);
+        }
     }
 
     public String getLastName() {
@@ -22,6 +65,32 @@ public class User {
     }
 
     public void setLastName(String lastName) {
-        this.lastName = lastName;
+        if (!Objects.equals(this.lastName, lastName)) {
+            this.lastName = lastName;
+            changed(LAST_NAME);
+        }
+    }
+
+    /** How many times a field was changed. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** The fields (FIRST_NAME, LAST_NAME) changed since clearChanges. */
+    public int getChangedFields() {
+        return changedFields;
+    }
+
+    public boolean isChanged(int field) {
+        return (changedFields & field) != 0;
+    }
+
+    public void clearChanges() {
+        changedFields = 0;
+    }
+
+    private void changed(int field) {
+        changedFields |= field;
+        version++;
     }
 }
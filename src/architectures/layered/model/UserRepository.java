@@ -0,0 +1,161 @@
+package architectures.layered.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps many users in memory, by id and by last name.
+ * 
+ * The users are in a ConcurrentHashMap by id, and in a ConcurrentSkipListMap
+ * by lower-case last name (followed by the id, so equal names do not collide),
+ * which finds all users whose last name starts with a prefix. Reads never
+ * lock, so they do not wait for writes and writes do not wait for them.
+ * 
+ * A stored User is never changed: an update stores a new User in its place
+ * (copy on write), so a reader always sees either the old or the new user,
+ * and the index always matches the user it points to. Writes to the same id
+ * are serialized by the ConcurrentHashMap, writes to different ids run in
+ * parallel.
+ * 
+ * Like a User, a stored user knows which of its fields were changed by
+ * updates since clearChanges, and counts the changes in its version.
+ * 
+ * The repository returns copies of the stored users, so a caller that changes
+ * one does not change the stored user behind the back of the index. Use
+ * update for that.
+ */
+public class UserRepository {
+    // Between the last name and the id in the keys of byLastName.
+    private static final char SEPARATOR = '\u0000';
+
+    private final ConcurrentHashMap<Long, User> byId = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, User> byLastName = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /** Stores a new user and returns it with its id. */
+    public User create(String firstName, String lastName) {
+        User user = new User(nextId.getAndIncrement(), firstName, lastName);
+        return copy(byId.computeIfAbsent(user.getId(), id -> {
+            byLastName.put(indexKey(user), user);
+            return user;
+        }));
+    }
+
+    /** Stores copies of the users with new ids, ignoring their ids. */
+    public List<User> createAll(Collection<User> users) {
+        List<User> created = new ArrayList<>(users.size());
+        for (User user : users) {
+            created.add(create(user.getFirstName(), user.getLastName()));
+        }
+        return created;
+    }
+
+    /**
+     * Replaces the names of the user with the id. Returns the new user, or
+     * null if there is no user with the id.
+     */
+    public User update(long id, String firstName, String lastName) {
+        return copy(byId.computeIfPresent(id, (key, old) -> {
+            int changed = (Objects.equals(old.getFirstName(), firstName) ? 0 : User.FIRST_NAME)
+                    | (Objects.equals(old.getLastName(), lastName) ? 0 : User.LAST_NAME);
+            if (changed == 0) {
+                return old;
+            }
+            User updated = new User(id, firstName, lastName, old.getVersion() + Integer.bitCount(changed),
+                    old.getChangedFields() | changed);
+            // Inside compute, so no other write to this id can come between.
+            byLastName.remove(indexKey(old));
+            byLastName.put(indexKey(updated), updated);
+            return updated;
+        }));
+    }
+
+    /**
+     * Replaces the names of the stored users that have the ids of the given
+     * users. Returns how many were stored.
+     */
+    public int updateAll(Collection<User> users) {
+        int updated = 0;
+        for (User user : users) {
+            if (update(user.getId(), user.getFirstName(), user.getLastName()) != null) {
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Marks the user with the id as unchanged, if it still has the version
+     * (so changes made after that version are not lost).
+     */
+    public void clearChanges(long id, long version) {
+        byId.computeIfPresent(id, (key, old) -> {
+            if (old.getVersion() != version || old.getChangedFields() == 0) {
+                return old;
+            }
+            User cleared = new User(id, old.getFirstName(), old.getLastName(), version, 0);
+            byLastName.put(indexKey(cleared), cleared);
+            return cleared;
+        });
+    }
+
+    /** Removes the user with the id, returns it or null. */
+    public User delete(long id) {
+        User[] removed = new User[1];
+        byId.computeIfPresent(id, (key, old) -> {
+            byLastName.remove(indexKey(old));
+            removed[0] = old;
+            return null;
+        });
+        return copy(removed[0]);
+    }
+
+    public User findById(long id) {
+        return copy(byId.get(id));
+    }
+
+    /**
+     * Returns at most limit users whose last name starts with the prefix,
+     * ignoring case, in the order of their last names.
+     */
+    public List<User> findByLastNamePrefix(String prefix, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        }
+        String from = prefix.toLowerCase(Locale.ROOT);
+        ConcurrentNavigableMap<String, User> range = byLastName.subMap(from, true, from + Character.MAX_VALUE, true);
+        List<User> users = new ArrayList<>(Math.min(limit, 1024));
+        for (Map.Entry<String, User> entry : range.entrySet()) {
+            if (users.size() == limit) {
+                break;
+            }
+            users.add(copy(entry.getValue()));
+        }
+        return users;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    // A user without a last name is indexed under "".
+    private static String indexKey(User user) {
+        String lastName = user.getLastName() == null ? "" : user.getLastName();
+        return lastName.toLowerCase(Locale.ROOT) + SEPARATOR + user.getId();
+    }
+
+    // A copy for the caller, with the same version and changed fields.
+    private static User copy(User user) {
+        return user == null ? null
+                : new User(user.getId(), user.getFirstName(), user.getLastName(), user.getVersion(),
+                        user.getChangedFields());
+    }
+}
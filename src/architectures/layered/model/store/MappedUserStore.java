@@ -0,0 +1,222 @@
+package architectures.layered.model.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import architectures.layered.model.User;
+
+/**
+ * Users stored in a file that is mapped into memory, so opening it takes the
+ * same time for ten users and for ten million: nothing is read or converted
+ * until a user is asked for, and then only that user.
+ * 
+ * The file has three parts:
+ * 
+ * header (32 bytes): magic, format, number of users, unused, offset and
+ * length of the string heap.
+ * 
+ * records (32 bytes per user, sorted by id): id (8 bytes), version (8),
+ * offset and length of the first name (4 + 4), offset and length of the last
+ * name (4 + 4). Since every record has the same size, record i is at
+ * HEADER_SIZE + i * RECORD_SIZE, and a user is found by a binary search on the
+ * ids.
+ * 
+ * string heap: the names as UTF-8, one after the other. The offsets in the
+ * records are relative to its start.
+ * 
+ * A mapped region can be at most 2 GB, so a file holds up to about 67 million
+ * users and 2 GB of names.
+ */
+public class MappedUserStore implements AutoCloseable {
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 32;
+    /** The most users a file can hold, so that the records fit in one mapped region. */
+    public static final int MAX_USERS = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    private static final int MAGIC = 0x55535253; // "USRS"
+    private static final int FORMAT = 1;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer records;
+    private final MappedByteBuffer heap;
+    private final int size;
+
+    private MappedUserStore(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT) {
+            throw new IOException("not a user store");
+        }
+        this.size = header.getInt(8);
+        long heapOffset = header.getLong(16);
+        long heapLength = header.getLong(24);
+        this.records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) size * RECORD_SIZE);
+        this.heap = channel.map(FileChannel.MapMode.READ_ONLY, heapOffset, heapLength);
+    }
+
+    public static MappedUserStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new MappedUserStore(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the users to the file, replacing it. The ids of the users must
+     * be different.
+     */
+    public static void write(Path file, Collection<User> users) throws IOException {
+        if (users.size() > MAX_USERS) {
+            throw new IllegalArgumentException("more than " + MAX_USERS + " users");
+        }
+        List<User> sorted = new ArrayList<>(users);
+        sorted.sort(Comparator.comparingLong(User::getId));
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i).getId() == sorted.get(i - 1).getId()) {
+                throw new IllegalArgumentException("duplicate id " + sorted.get(i).getId());
+            }
+        }
+
+        long heapOffset = HEADER_SIZE + (long) sorted.size() * RECORD_SIZE;
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Records and names are written at the same time, each through its own buffer.
+            ByteBuffer recordBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            ByteBuffer heapBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            long recordPosition = HEADER_SIZE;
+            long heapLength = 0;
+            for (User user : sorted) {
+                byte[] firstName = user.getFirstName().getBytes(StandardCharsets.UTF_8);
+                byte[] lastName = user.getLastName().getBytes(StandardCharsets.UTF_8);
+                if (heapLength + firstName.length + lastName.length > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("names larger than 2 GB");
+                }
+                if (recordBuffer.remaining() < RECORD_SIZE) {
+                    recordPosition += writeAt(out, recordBuffer, recordPosition);
+                }
+                recordBuffer.putLong(user.getId()).putLong(user.getVersion())
+                        .putInt((int) heapLength).putInt(firstName.length)
+                        .putInt((int) heapLength + firstName.length).putInt(lastName.length);
+                for (byte[] name : new byte[][] { firstName, lastName }) {
+                    if (heapBuffer.remaining() < name.length) {
+                        writeAt(out, heapBuffer, heapOffset + heapLength - heapBuffer.position());
+                    }
+                    if (name.length > heapBuffer.capacity()) {
+                        writeAt(out, ByteBuffer.wrap(name), heapOffset + heapLength);
+                    } else {
+                        heapBuffer.put(name);
+                    }
+                    heapLength += name.length;
+                }
+            }
+            writeAt(out, recordBuffer, recordPosition);
+            writeAt(out, heapBuffer, heapOffset + heapLength - heapBuffer.position());
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT).putInt(sorted.size()).putInt(0)
+                    .putLong(heapOffset).putLong(heapLength);
+            writeAt(out, header, 0);
+        }
+    }
+
+    // Writes the buffer at the position and clears it, returns the bytes written.
+    private static int writeAt(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+        buffer.clear();
+        return length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Returns the index of the user with the id, or -1. */
+    public int indexOf(long id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = getId(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the user with the id, or null. */
+    public User findById(long id) {
+        int index = indexOf(id);
+        return index < 0 ? null : get(index);
+    }
+
+    /**
+     * Returns the user at the index (0 to size - 1), in the order of the ids,
+     * with its stored version and no changed fields.
+     */
+    public User get(int index) {
+        return new User(getId(index), getFirstName(index), getLastName(index), getVersion(index));
+    }
+
+    public long getId(int index) {
+        return records.getLong(record(index));
+    }
+
+    public long getVersion(int index) {
+        return records.getLong(record(index) + 8);
+    }
+
+    public String getFirstName(int index) {
+        int record = record(index);
+        return string(records.getInt(record + 16), records.getInt(record + 20));
+    }
+
+    public String getLastName(int index) {
+        int record = record(index);
+        return string(records.getInt(record + 24), records.getInt(record + 28));
+    }
+
+    // The position of the record in records, for an index from 0 to size - 1.
+    private int record(int index) {
+        return Objects.checkIndex(index, size) * RECORD_SIZE;
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = heap.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Closes the file. The mapped memory is released by the garbage collector
+     * once the store is no longer referenced.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
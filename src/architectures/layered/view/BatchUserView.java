@@ -0,0 +1,261 @@
+package architectures.layered.view;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import architectures.layered.model.User;
+
+/**
+ * A UserView for many users. Instead of three println calls per user, the
+ * users are rendered into one reusable buffer, which is written to the channel
+ * only when it is full, so there is one write for thousands of users.
+ * 
+ * The users can be rendered as TEXT (like UserView), CSV or an HTML table.
+ * Call close (or flush) at the end, to write what is still in the buffer.
+ */
+public class BatchUserView extends UserView implements AutoCloseable {
+
+    public enum Format {
+        TEXT, CSV, HTML
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final boolean closeChannel;
+    private final Format format;
+    private final StringBuilder text = new StringBuilder(BUFFER_SIZE);
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    // A broken surrogate in a name is written as '?' instead of stopping the output.
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private boolean started;
+
+    public BatchUserView(WritableByteChannel channel, Format format) {
+        this(channel, true, format);
+    }
+
+    private BatchUserView(WritableByteChannel channel, boolean closeChannel, Format format) {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.format = format;
+    }
+
+    /** Writes to the console, which stays open when the view is closed. */
+    public static BatchUserView toConsole(Format format) {
+        return new BatchUserView(Channels.newChannel(new FileOutputStream(FileDescriptor.out)), false, format);
+    }
+
+    public static BatchUserView toFile(Path file, Format format) throws IOException {
+        return new BatchUserView(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), format);
+    }
+
+    @Override
+    public void printUserDetails(String firstName, String lastName) {
+        start();
+        switch (format) {
+            case TEXT:
+                text.append("User: \nFirst Name: ").append(firstName).append("\nLast Name: ").append(lastName)
+                        .append('\n');
+                break;
+            case CSV:
+                csv(firstName).append(',');
+                csv(lastName).append('\n');
+                break;
+            case HTML:
+                text.append("<tr><td>");
+                html(firstName).append("</td><td>");
+                html(lastName).append("</td></tr>\n");
+                break;
+        }
+        if (text.length() >= BUFFER_SIZE) {
+            encode();
+        }
+    }
+
+    /**
+     * Renders only the fields that are not null. In CSV an unchanged field is
+     * an empty field, while an empty name is written as "", and in HTML it is
+     * an empty cell with class="unchanged".
+     */
+    @Override
+    public void printUserChanges(String firstName, String lastName) {
+        switch (format) {
+            case TEXT:
+                text.append("User: \n");
+                if (firstName != null) {
+                    text.append("First Name: ").append(firstName).append('\n');
+                }
+                if (lastName != null) {
+                    text.append("Last Name: ").append(lastName).append('\n');
+                }
+                break;
+            case CSV:
+                start();
+                if (firstName != null) {
+                    csv(firstName);
+                }
+                text.append(',');
+                if (lastName != null) {
+                    csv(lastName);
+                }
+                text.append('\n');
+                break;
+            case HTML:
+                start();
+                text.append("<tr>");
+                htmlCell(firstName);
+                htmlCell(lastName);
+                text.append("</tr>\n");
+                break;
+        }
+        if (text.length() >= BUFFER_SIZE) {
+            encode();
+        }
+    }
+
+    private void htmlCell(String value) {
+        if (value == null) {
+            text.append("<td class=\"unchanged\"></td>");
+        } else {
+            text.append("<td>");
+            html(value).append("</td>");
+        }
+    }
+
+    public void printUsers(Iterable<User> users) {
+        for (User user : users) {
+            printUserDetails(user.getFirstName(), user.getLastName());
+        }
+    }
+
+    /** Writes everything rendered so far to the channel. */
+    public void flush() {
+        encode();
+        write();
+    }
+
+    /** Ends the output (the HTML table), writes it and closes the channel. */
+    @Override
+    public void close() {
+        if (started) {
+            footer();
+        }
+        encode(true);
+        write();
+        if (!closeChannel) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void start() {
+        if (!started) {
+            started = true;
+            header();
+        }
+    }
+
+    private void header() {
+        if (format == Format.CSV) {
+            text.append("first_name,last_name\n");
+        } else if (format == Format.HTML) {
+            text.append("<table>\n<tr><th>First Name</th><th>Last Name</th></tr>\n");
+        }
+    }
+
+    private void footer() {
+        if (format == Format.HTML) {
+            text.append("</table>\n");
+        }
+    }
+
+    private StringBuilder csv(String value) {
+        // An empty name is quoted, to tell it from an unchanged field.
+        if (!value.isEmpty() && value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return text.append(value);
+        }
+        text.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                text.append('"');
+            }
+            text.append(c);
+        }
+        return text.append('"');
+    }
+
+    private StringBuilder html(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<':
+                    text.append("&lt;");
+                    break;
+                case '>':
+                    text.append("&gt;");
+                    break;
+                case '&':
+                    text.append("&amp;");
+                    break;
+                case '"':
+                    text.append("&quot;");
+                    break;
+                default:
+                    text.append(c);
+            }
+        }
+        return text;
+    }
+
+    private void encode() {
+        encode(false);
+    }
+
+    // Moves the rendered text into the byte buffer, writing it whenever it is
+    // full. Unless it is the end of the input, half a surrogate pair at the
+    // end of the text is kept for the next time.
+    private void encode(boolean endOfInput) {
+        CharBuffer chars = CharBuffer.wrap(text);
+        while (encoder.encode(chars, bytes, endOfInput).isOverflow()) {
+            write();
+        }
+        if (endOfInput) {
+            while (encoder.flush(bytes).isOverflow()) {
+                write();
+            }
+            encoder.reset();
+        }
+        text.delete(0, chars.position());
+    }
+
+    private void write() {
+        bytes.flip();
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bytes.clear();
+    }
+}
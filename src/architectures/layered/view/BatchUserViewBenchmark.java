@@ -0,0 +1,64 @@
+package architectures.layered.view;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import architectures.layered.model.User;
+
+/**
+ * Measures how many users per second UserView and BatchUserView render into a
+ * file. UserView writes through System.out without a buffer, like it does to
+ * the console.
+ * 
+ * Arguments: number of users (default 1000000).
+ */
+public class BatchUserViewBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new User(i + 1, "First" + i, "Last" + i));
+        }
+        Path file = Files.createTempFile("users", ".out");
+        try {
+            for (int round = 0; round < 3; round++) {
+                System.err.printf("UserView             %,12.0f users/s%n", userView(users, file));
+                for (BatchUserView.Format format : BatchUserView.Format.values()) {
+                    System.err.printf("BatchUserView %-6s %,12.0f users/s%n", format, batchUserView(users, file, format));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static double userView(List<User> users, Path file) throws IOException {
+        PrintStream console = System.out;
+        try (PrintStream out = new PrintStream(new FileOutputStream(file.toFile()))) {
+            System.setOut(out);
+            UserView view = new UserView();
+            long start = System.nanoTime();
+            for (User user : users) {
+                view.printUserDetails(user.getFirstName(), user.getLastName());
+            }
+            return users.size() * 1e9 / (System.nanoTime() - start);
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private static double batchUserView(List<User> users, Path file, BatchUserView.Format format)
+            throws IOException {
+        long start = System.nanoTime();
+        try (BatchUserView view = BatchUserView.toFile(file, format)) {
+            view.printUsers(users);
+        }
+        return users.size() * 1e9 / (System.nanoTime() - start);
+    }
+}
@@ -6,4 +6,15 @@ public class UserView {
         System.out.println("First Name: " + firstName);
         System.out.println("Last Name: " + lastName);
     }
+
+    /** Prints only the fields that are not null. */
+    public void printUserChanges(String firstName, String lastName) {
+        System.out.println("User: ");
+        if (firstName != null) {
+            System.out.println("First Name: " + firstName);
+        }
+        if (lastName != null) {
+            System.out.println("Last Name: " + lastName);
+        }
+    }
 }
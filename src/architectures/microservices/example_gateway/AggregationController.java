@@ -0,0 +1,233 @@
+package architectures.microservices.example_gateway;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Serves everything a book page needs in one request.
+ * 
+ * GET /gateway/books/{id} calls the catalog, inventory and orders services at
+ * the same time and merges their JSON responses into one object, one field per
+ * service. So the page waits as long as the slowest service instead of the
+ * three one after another.
+ * 
+ * The calls are set with gateway.aggregate.parts, a list of name=path, where
+ * {id} in the path is replaced by the id of the book. Each path is sent
+ * through the route table like any other request.
+ * 
+ * A call that fails or does not answer within gateway.aggregate.timeout-ms is
+ * left out and its error is put in the "errors" field; the others are still
+ * returned. Only when all of them fail the response is 502 Bad Gateway. The
+ * calls use the same timeout for connecting, waiting for a pooled connection
+ * and each read, so a slow service does not keep a thread and a connection
+ * after its part was given up, and the timeout counts as a failure of the
+ * instance.
+ * 
+ * Each call counts against the RateLimiter of the client and the
+ * ConcurrencyLimiter of its route, like a request sent to the route directly.
+ * A call over a limit is not sent and reported in "errors"; when all of them
+ * were over a limit, the response is 429 Too Many Requests (with Retry-After)
+ * or 503 Service Unavailable instead of 502.
+ */
+@RestController
+class AggregationController {
+
+    /** A call that was not sent because of the rate or concurrency limit. */
+    private static final class RejectedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final HttpStatus status;
+        final long retryAfterSeconds;
+
+        RejectedException(HttpStatus status, long retryAfterSeconds, String message) {
+            super(message);
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+
+    private final RestTemplate restTemplate;
+    private final GatewayRoutes routes;
+    private final HeaderPipeline headerPipeline;
+    private final RateLimiter rateLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final AsyncTaskExecutor executor;
+    private final ObjectMapper objectMapper;
+    private final Map<String, String> parts = new LinkedHashMap<>();
+    private final long timeoutMillis;
+
+    AggregationController(CloseableHttpClient upstreamHttpClient, GatewayRoutes routes, HeaderPipeline headerPipeline,
+            RateLimiter rateLimiter, ConcurrencyLimiter concurrencyLimiter, AsyncTaskExecutor gatewayAsyncExecutor,
+            ObjectMapper objectMapper,
+            @Value("${gateway.aggregate.parts:catalog=/catalog/{id},inventory=/inventory/{id},"
+                    + "orders=/orders?bookId={id}}") String parts,
+            @Value("${gateway.aggregate.timeout-ms:1000}") long timeoutMillis) {
+        HttpComponentsClientHttpRequestFactory requestFactory =
+                new HttpComponentsClientHttpRequestFactory(upstreamHttpClient);
+        requestFactory.setConnectTimeout((int) timeoutMillis);
+        requestFactory.setConnectionRequestTimeout((int) timeoutMillis);
+        requestFactory.setReadTimeout((int) timeoutMillis);
+        this.restTemplate = UpstreamClientConfiguration.restTemplate(requestFactory);
+        this.routes = routes;
+        this.headerPipeline = headerPipeline;
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.executor = gatewayAsyncExecutor;
+        this.objectMapper = objectMapper;
+        for (String part : parts.split(",")) {
+            String[] nameAndPath = part.split("=", 2);
+            this.parts.put(nameAndPath[0].trim(), nameAndPath[1].trim());
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @GetMapping("/gateway/books/{id}")
+    public CompletableFuture<ResponseEntity<JsonNode>> book(@PathVariable String id, HttpServletRequest request) {
+        String encodedId = UriUtils.encodePathSegment(id, StandardCharsets.UTF_8);
+        Map<String, CompletableFuture<JsonNode>> calls = new LinkedHashMap<>();
+        parts.forEach((name, path) -> calls.put(name, fetch(path.replace("{id}", encodedId), request)));
+
+        CompletableFuture<?>[] done = calls.values().stream()
+                .map(call -> call.handle((json, error) -> null))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(done).thenApply(all -> merge(id, calls));
+    }
+
+    private CompletableFuture<JsonNode> fetch(String path, HttpServletRequest request) {
+        int query = path.indexOf('?');
+        Route route = routes.match(query < 0 ? path : path.substring(0, query));
+        if (route == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("no route for " + path));
+        }
+        // The servlet request may only be read on this thread.
+        long retryAfterSeconds = rateLimiter.tryAcquire(request, route.getName());
+        if (retryAfterSeconds > 0) {
+            return CompletableFuture.failedFuture(
+                    new RejectedException(HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds, "rate limit exceeded"));
+        }
+        HttpHeaders headers = headerPipeline.requestHeaders(request, route);
+        ConcurrencyLimiter.Limit limit = null;
+        if (concurrencyLimiter.isEnabled()) {
+            limit = concurrencyLimiter.tryAcquire(route.getName());
+            if (limit == null) {
+                return CompletableFuture.failedFuture(
+                        new RejectedException(HttpStatus.SERVICE_UNAVAILABLE, 0, "concurrency limit exceeded"));
+            }
+        }
+        ConcurrencyLimiter.Limit acquired = limit;
+        try {
+            return CompletableFuture.supplyAsync(() -> get(route, path, headers, acquired), executor)
+                    .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TaskRejectedException e) {
+            if (acquired != null) {
+                concurrencyLimiter.cancel(acquired);
+            }
+            return CompletableFuture.failedFuture(new IllegalStateException("gateway busy"));
+        }
+    }
+
+    // Releases the limit, if any, once the service has answered.
+    private JsonNode get(Route route, String path, HttpHeaders headers, ConcurrencyLimiter.Limit limit) {
+        UpstreamPool pool = route.getPool();
+        Upstream instance = pool.choose();
+        pool.onStart(instance);
+        long start = System.nanoTime();
+        boolean failed = true;
+        ResponseEntity<byte[]> response;
+        try {
+            // The id in the path is already encoded, so no URI template expansion.
+            response = restTemplate.exchange(URI.create(instance.getBaseUrl() + path), HttpMethod.GET,
+                    new HttpEntity<>(headers), byte[].class);
+            failed = response.getStatusCode().is5xxServerError();
+        } catch (RuntimeException e) {
+            pool.onFailure(instance);
+            throw e;
+        } finally {
+            if (limit != null) {
+                concurrencyLimiter.release(limit, start, failed);
+            }
+        }
+        if (response.getStatusCode().is5xxServerError()) {
+            pool.onFailure(instance);
+        } else {
+            pool.onSuccess(instance);
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new IllegalStateException("HTTP " + response.getStatusCodeValue());
+        }
+        try {
+            return response.getBody() == null ? objectMapper.nullNode() : objectMapper.readTree(response.getBody());
+        } catch (IOException e) {
+            throw new IllegalStateException("invalid JSON: " + e.getMessage());
+        }
+    }
+
+    private ResponseEntity<JsonNode> merge(String id, Map<String, CompletableFuture<JsonNode>> calls) {
+        ObjectNode page = objectMapper.createObjectNode();
+        page.put("id", id);
+        ObjectNode errors = objectMapper.createObjectNode();
+        // The rejection with the longest Retry-After, and how many calls were rejected.
+        RejectedException rejected = null;
+        int rejections = 0;
+        for (Map.Entry<String, CompletableFuture<JsonNode>> call : calls.entrySet()) {
+            try {
+                page.set(call.getKey(), call.getValue().join());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                errors.put(call.getKey(), cause instanceof TimeoutException ? "timeout after " + timeoutMillis + " ms"
+                        : String.valueOf(cause.getMessage()));
+                if (cause instanceof RejectedException) {
+                    RejectedException rejection = (RejectedException) cause;
+                    rejections++;
+                    if (rejected == null || rejection.retryAfterSeconds > rejected.retryAfterSeconds) {
+                        rejected = rejection;
+                    }
+                }
+            }
+        }
+        if (errors.size() == 0) {
+            return ResponseEntity.ok(page);
+        }
+        page.set("errors", errors);
+        if (errors.size() < calls.size()) {
+            return ResponseEntity.ok(page);
+        }
+        if (rejected == null || rejections < calls.size()) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(page);
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(rejected.status);
+        if (rejected.retryAfterSeconds > 0) {
+            response.header(HttpHeaders.RETRY_AFTER, Long.toString(rejected.retryAfterSeconds));
+        }
+        return response.body(page);
+    }
+}
@@ -0,0 +1,155 @@
+package architectures.microservices.example_gateway;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.client.RestTemplate;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The controller of the buffered mode of the gateway, see
+ * ApiGatewayApplication.
+ */
+@RestController
+@ConditionalOnProperty(name = "gateway.mode", havingValue = "buffered", matchIfMissing = true)
+class ApiController {
+
+    // Shared by all requests, see UpstreamClientConfiguration.
+    private final RestTemplate restTemplate;
+
+    private final GatewayRoutes routes;
+    private final ResponseCache responseCache;
+    private final Hedging hedging;
+    private final HeaderPipeline headerPipeline;
+    private final ResponseCompressor compressor;
+    private final RateLimiter rateLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final SingleFlight<String, ResponseEntity<byte[]>> singleFlight = new SingleFlight<>();
+    private final List<String> coalesceKeyHeaders;
+
+    ApiController(RestTemplate upstreamRestTemplate, GatewayRoutes routes, ResponseCache responseCache,
+            Hedging hedging, HeaderPipeline headerPipeline, ResponseCompressor compressor, RateLimiter rateLimiter,
+            ConcurrencyLimiter concurrencyLimiter,
+            @Value("${gateway.coalesce.key-headers:Accept,Accept-Encoding,Accept-Language,Authorization,Cookie,"
+                    + "If-None-Match,If-Modified-Since}") String coalesceKeyHeaders) {
+        this.restTemplate = upstreamRestTemplate;
+        this.routes = routes;
+        this.responseCache = responseCache;
+        this.hedging = hedging;
+        this.headerPipeline = headerPipeline;
+        this.compressor = compressor;
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.coalesceKeyHeaders = Arrays.asList(coalesceKeyHeaders.split(","));
+    }
+
+    /**
+     * Forwards every request whose path matches a route of the route table.
+     * More specific mappings, like the metrics, still win over this one.
+     * 
+     * The response is completed by the ResponseCompressor, so the request
+     * thread is free again while it compresses.
+     * 
+     * Requests over the rate limit of their client get 429 Too Many Requests,
+     * requests over the concurrency limit of the route 503 Service
+     * Unavailable, both without calling the service.
+     */
+    @RequestMapping(value = "/**", method = { RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT,
+            RequestMethod.DELETE })
+    public CompletableFuture<ResponseEntity<byte[]>> route(HttpServletRequest request) throws IOException {
+        Route route = routes.match(request.getRequestURI());
+        if (route == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
+        }
+        long retryAfterSeconds = rateLimiter.tryAcquire(request, route.getName());
+        if (retryAfterSeconds > 0) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds)).build());
+        }
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (!concurrencyLimiter.isEnabled()) {
+            return compressor.compress(proxyRequest(request, route), acceptEncoding);
+        }
+        ConcurrencyLimiter.Limit limit = concurrencyLimiter.tryAcquire(route.getName());
+        if (limit == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        ResponseEntity<byte[]> response;
+        try {
+            response = proxyRequest(request, route);
+            failed = response.getStatusCode().is5xxServerError();
+        } finally {
+            concurrencyLimiter.release(limit, start, failed);
+        }
+        return compressor.compress(response, acceptEncoding);
+    }
+
+    private ResponseEntity<byte[]> proxyRequest(HttpServletRequest request, Route route) throws IOException {
+        UpstreamRequest upstream = UpstreamRequest.from(request, route, headerPipeline);
+        if (responseCache.isCacheable(route.getName(), upstream)) {
+            return responseCache.get(route.getName(), upstream, cacheMiss -> exchange(route, cacheMiss));
+        }
+        return exchange(route, upstream);
+    }
+
+    private ResponseEntity<byte[]> exchange(Route route, UpstreamRequest upstream) {
+        UpstreamPool pool = route.getPool();
+        HttpMethod method = upstream.getMethod();
+        if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+            return send(pool, pool.choose(), upstream);
+        }
+        // Identical GETs that arrive while one is already on its way share its response.
+        return singleFlight.execute(coalesceKey(upstream), () -> {
+            if (hedging.isEnabled(route.getName())) {
+                return hedging.send(route.getName(), pool, instance -> send(pool, instance, upstream));
+            }
+            return send(pool, pool.choose(), upstream);
+        });
+    }
+
+    private ResponseEntity<byte[]> send(UpstreamPool pool, Upstream instance, UpstreamRequest upstream) {
+        pool.onStart(instance);
+        try {
+            // The path is already encoded, so it must not go through the URI template expansion.
+            URI uri = URI.create(instance.getBaseUrl() + upstream.getPath());
+            ResponseEntity<byte[]> response = restTemplate.exchange(uri, upstream.getMethod(), upstream.toEntity(),
+                    byte[].class);
+            if (response.getStatusCode().is5xxServerError()) {
+                pool.onFailure(instance);
+            } else {
+                pool.onSuccess(instance);
+            }
+            return new ResponseEntity<>(response.getBody(), headerPipeline.responseHeaders(response.getHeaders()),
+                    response.getStatusCode());
+        } catch (RuntimeException e) {
+            pool.onFailure(instance);
+            throw e;
+        }
+    }
+
+    private String coalesceKey(UpstreamRequest upstream) {
+        StringBuilder key = new StringBuilder().append(upstream.getMethod()).append(' ').append(upstream.getPath());
+        for (String header : coalesceKeyHeaders) {
+            key.append('\n').append(upstream.getHeaders().get(header));
+        }
+        return key.toString();
+    }
+
+    SingleFlight<String, ResponseEntity<byte[]>> getSingleFlight() {
+        return singleFlight;
+    }
+}
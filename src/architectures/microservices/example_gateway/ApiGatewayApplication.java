@@ -2,18 +2,6 @@ package architectures.microservices.example_gateway;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestMethod;
-import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.client.RestTemplate;
-
-import javax.servlet.http.HttpServletRequest;
-import java.util.Enumeration;
 
 /**
  * Make sure to include the necessary dependencies in your pom.xml file for the
@@ -27,6 +15,28 @@ import java.util.Enumeration;
  * </dependency>
  * </dependencies>
  * 
+ * The gateway has two modes, set with the property gateway.mode:
+ * 
+ * buffered (default) reads the whole response of the service into memory and
+ * then sends it to the client. GET responses of some routes are cached, see
+ * ResponseCache, and identical GET requests that arrive at the same time share
+ * one request to the service, see SingleFlight. Slow GET requests are hedged,
+ * see Hedging. Responses can be compressed for the client, see
+ * ResponseCompressor.
+ * 
+ * Clients can be limited to a number of requests per second per route, see
+ * RateLimiter, and the requests in progress per route can be limited, see
+ * ConcurrencyLimiter.
+ * 
+ * streaming streams the request and response bodies through a small buffer,
+ * see StreamingProxy. Use it when bodies can be large.
+ * 
+ * Each mode has its own controller, ApiController and StreamingApiController.
+ * 
+ * The routes are not hard-coded but loaded from a file that is reloaded when
+ * it changes, see GatewayRoutes. Each route can have several instances of its
+ * service, see UpstreamPool.
+ * 
  */
 
 @SpringBootApplication
@@ -35,47 +45,3 @@ public class ApiGatewayApplication {
         SpringApplication.run(ApiGatewayApplication.class, args);
     }
 }
-
-@RestController
-class ApiController {
-
-    private static final String BOOK_CATALOG_SERVICE = "http://localhost:3001";
-    private static final String BOOK_INVENTORY_SERVICE = "http://localhost:3002";
-    private static final String BOOK_ORDER_SERVICE = "http://localhost:3003";
-
-    private ResponseEntity<String> proxyRequest(HttpServletRequest request, String serviceUrl) {
-        HttpMethod method = HttpMethod.valueOf(request.getMethod());
-        String url = serviceUrl + request.getRequestURI();
-
-        HttpHeaders headers = new HttpHeaders();
-        Enumeration<String> headerNames = request.getHeaderNames();
-        while (headerNames.hasMoreElements()) {
-            String headerName = headerNames.nextElement();
-            if (!headerName.equalsIgnoreCase("Host")) {
-                headers.set(headerName, request.getHeader(headerName));
-            }
-        }
-
-        RestTemplate restTemplate = new RestTemplate();
-        HttpEntity<String> httpEntity = new HttpEntity<>(headers);
-        return restTemplate.exchange(url, method, httpEntity, String.class);
-    }
-
-    @RequestMapping(value = "/catalog/{path:.+}", method = { RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT,
-            RequestMethod.DELETE })
-    public ResponseEntity<String> catalogService(HttpServletRequest request) {
-        return proxyRequest(request, BOOK_CATALOG_SERVICE);
-    }
-
-    @RequestMapping(value = "/inventory/{path:.+}", method = { RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT,
-            RequestMethod.DELETE })
-    public ResponseEntity<String> inventoryService(HttpServletRequest request) {
-        return proxyRequest(request, BOOK_INVENTORY_SERVICE);
-    }
-
-    @RequestMapping(value = "/orders/{path:.+}", method = { RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT,
-            RequestMethod.DELETE })
-    public ResponseEntity<String> ordersService(HttpServletRequest request) {
-        return proxyRequest(request, BOOK_ORDER_SERVICE);
-    }
-}
@@ -0,0 +1,46 @@
+package architectures.microservices.example_gateway;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * A bounded thread pool for the asynchronous parts of a request, such as
+ * copying a streamed response body. Without it Spring MVC would start a new
+ * thread for every streamed response.
+ * 
+ * gateway.async.threads=64, gateway.async.queue=1000 and
+ * gateway.async.timeout-ms=60000 (how long a streamed response may take).
+ */
+@Configuration
+class AsyncConfiguration implements WebMvcConfigurer {
+
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    private final int timeout;
+
+    AsyncConfiguration(@Value("${gateway.async.threads:64}") int threads,
+            @Value("${gateway.async.queue:1000}") int queue,
+            @Value("${gateway.async.timeout-ms:60000}") int timeout) {
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queue);
+        executor.setThreadNamePrefix("gateway-async-");
+        this.timeout = timeout;
+    }
+
+    // Registered as a bean so the container starts and stops it.
+    @Bean
+    AsyncTaskExecutor gatewayAsyncExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(executor);
+        configurer.setDefaultTimeout(timeout);
+    }
+}
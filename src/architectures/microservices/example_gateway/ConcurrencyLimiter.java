@@ -0,0 +1,128 @@
+package architectures.microservices.example_gateway;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limits the number of requests in progress per route, so a slow service is
+ * not buried under more and more waiting requests.
+ * 
+ * The limit adapts (AIMD): every request that is answered in less than
+ * gateway.concurrency.latency-ms without a 5xx raises it by 1/limit, so by
+ * about one per round of requests; every slow or failed request multiplies it
+ * by gateway.concurrency.backoff. It stays between gateway.concurrency.min
+ * and gateway.concurrency.max.
+ * 
+ * Requests over the limit are rejected at once instead of waiting. The
+ * counters are atomics per route, no locks are taken.
+ * 
+ * The limit is per route only, not per client: it protects the service, not
+ * the other clients, so one busy client can take all of a route's limit and
+ * the others get 503. Fairness between clients is the job of the RateLimiter.
+ * 
+ * Off by default, enable it with gateway.concurrency.enabled=true.
+ */
+@Component
+class ConcurrencyLimiter {
+
+    /** The limit and requests in progress of one route. */
+    static class Limit {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        // The limit as the bits of a double, so it can be updated with compareAndSet.
+        private final AtomicLong limitBits;
+        private final LongAdder rejected = new LongAdder();
+
+        Limit(double initial) {
+            limitBits = new AtomicLong(Double.doubleToLongBits(initial));
+        }
+
+        double getLimit() {
+            return Double.longBitsToDouble(limitBits.get());
+        }
+    }
+
+    private final boolean enabled;
+    private final double initial;
+    private final double min;
+    private final double max;
+    private final long latencyNanos;
+    private final double backoff;
+    private final ConcurrentHashMap<String, Limit> limits = new ConcurrentHashMap<>();
+
+    ConcurrencyLimiter(@Value("${gateway.concurrency.enabled:false}") boolean enabled,
+            @Value("${gateway.concurrency.initial:20}") int initial,
+            @Value("${gateway.concurrency.min:1}") int min,
+            @Value("${gateway.concurrency.max:200}") int max,
+            @Value("${gateway.concurrency.latency-ms:500}") long latencyMillis,
+            @Value("${gateway.concurrency.backoff:0.9}") double backoff) {
+        this.enabled = enabled;
+        this.initial = initial;
+        this.min = min;
+        this.max = max;
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        this.backoff = backoff;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Counts a request of the route as in progress and returns its Limit, to
+     * be passed to release, or returns null if the route is at its limit.
+     */
+    Limit tryAcquire(String route) {
+        Limit limit = limits.computeIfAbsent(route, name -> new Limit(initial));
+        int allowed = (int) limit.getLimit();
+        while (true) {
+            int current = limit.inFlight.get();
+            if (current >= allowed) {
+                limit.rejected.increment();
+                return null;
+            }
+            if (limit.inFlight.compareAndSet(current, current + 1)) {
+                return limit;
+            }
+        }
+    }
+
+    /** Ends a request started with tryAcquire and adapts the limit. */
+    void release(Limit limit, long startNanos, boolean failed) {
+        limit.inFlight.decrementAndGet();
+        boolean slow = System.nanoTime() - startNanos > latencyNanos;
+        while (true) {
+            long bits = limit.limitBits.get();
+            double current = Double.longBitsToDouble(bits);
+            double next = failed || slow ? Math.max(min, current * backoff) : Math.min(max, current + 1 / current);
+            if (next == current || limit.limitBits.compareAndSet(bits, Double.doubleToLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    /** Ends a request started with tryAcquire that was never sent, without adapting the limit. */
+    void cancel(Limit limit) {
+        limit.inFlight.decrementAndGet();
+    }
+
+    Map<String, Object> metrics() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", enabled);
+        limits.forEach((route, limit) -> {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("limit", (int) limit.getLimit());
+            metrics.put("inFlight", limit.inFlight.get());
+            metrics.put("rejected", limit.rejected.sum());
+            map.put(route, metrics);
+        });
+        return map;
+    }
+}
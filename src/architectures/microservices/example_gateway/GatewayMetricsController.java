@@ -0,0 +1,127 @@
+package architectures.microservices.example_gateway;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Serves the metrics of the gateway as JSON.
+ * 
+ * /gateway/metrics/pool shows the upstream connection pool: for all services
+ * together and for each service, how many connections are leased (in use),
+ * available (idle), how many requests are pending (waiting for a connection),
+ * the maximum and the utilization (leased / max).
+ * 
+ * /gateway/metrics/cache shows the size of the ResponseCache and its hits,
+ * misses and revalidations per route.
+ * 
+ * /gateway/metrics/coalescing shows how many GET requests were sent to a
+ * service and how many shared the response of an identical request (only in
+ * buffered mode).
+ * 
+ * /gateway/metrics/upstreams shows, for every instance of every route, the
+ * requests in progress, the failures and whether it is ejected.
+ * 
+ * /gateway/metrics/hedging shows the current hedge delay and the number of
+ * hedges and retries per route.
+ * 
+ * /gateway/metrics/compression shows how many responses were compressed, how
+ * many were sent uncompressed because the compression pool was busy, and the
+ * bytes saved.
+ * 
+ * /gateway/metrics/limits shows the requests allowed and rejected by the
+ * RateLimiter, and the current limit, requests in progress and rejections of
+ * the ConcurrencyLimiter per route.
+ */
+@RestController
+class GatewayMetricsController {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final ResponseCache responseCache;
+    // Absent in streaming mode.
+    private final ObjectProvider<ApiController> apiController;
+    private final GatewayRoutes routes;
+    private final Hedging hedging;
+    private final ResponseCompressor compressor;
+    private final RateLimiter rateLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    GatewayMetricsController(PoolingHttpClientConnectionManager connectionManager, ResponseCache responseCache,
+            ObjectProvider<ApiController> apiController, GatewayRoutes routes, Hedging hedging,
+            ResponseCompressor compressor, RateLimiter rateLimiter, ConcurrencyLimiter concurrencyLimiter) {
+        this.connectionManager = connectionManager;
+        this.responseCache = responseCache;
+        this.apiController = apiController;
+        this.routes = routes;
+        this.hedging = hedging;
+        this.compressor = compressor;
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    @GetMapping("/gateway/metrics/pool")
+    public Map<String, Object> pool() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("total", toMap(connectionManager.getTotalStats()));
+        Map<String, Object> routes = new LinkedHashMap<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            routes.put(route.getTargetHost().toHostString(), toMap(connectionManager.getStats(route)));
+        }
+        metrics.put("routes", routes);
+        return metrics;
+    }
+
+    @GetMapping("/gateway/metrics/cache")
+    public Map<String, Object> cache() {
+        return responseCache.metrics();
+    }
+
+    @GetMapping("/gateway/metrics/coalescing")
+    public Map<String, Object> coalescing() {
+        ApiController controller = apiController.getIfAvailable();
+        if (controller == null) {
+            return Map.of("sent", 0L, "shared", 0L);
+        }
+        SingleFlight<?, ?> singleFlight = controller.getSingleFlight();
+        return Map.of("sent", singleFlight.getExecuted(), "shared", singleFlight.getShared());
+    }
+
+    @GetMapping("/gateway/metrics/upstreams")
+    public Map<String, Object> upstreams() {
+        return routes.metrics();
+    }
+
+    @GetMapping("/gateway/metrics/hedging")
+    public Map<String, Object> hedging() {
+        return hedging.metrics();
+    }
+
+    @GetMapping("/gateway/metrics/compression")
+    public Map<String, Object> compression() {
+        return compressor.metrics();
+    }
+
+    @GetMapping("/gateway/metrics/limits")
+    public Map<String, Object> limits() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("rate", rateLimiter.metrics());
+        metrics.put("concurrency", concurrencyLimiter.metrics());
+        return metrics;
+    }
+
+    private static Map<String, Object> toMap(PoolStats stats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("leased", stats.getLeased());
+        map.put("available", stats.getAvailable());
+        map.put("pending", stats.getPending());
+        map.put("max", stats.getMax());
+        map.put("utilization", stats.getMax() == 0 ? 0.0 : (double) stats.getLeased() / stats.getMax());
+        return map;
+    }
+}
@@ -0,0 +1,222 @@
+package architectures.microservices.example_gateway;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The routes of the gateway, loaded from a properties file and compiled into a
+ * RouteTable.
+ * 
+ * The file is set with gateway.routes.file. Every route has a name and these
+ * keys (only prefix and upstreams are required):
+ * 
+ * route.catalog.prefix=/catalog
+ * route.catalog.upstreams=http://localhost:3001,http://localhost:3011
+ * route.catalog.balancer=ROUND_ROBIN
+ * route.catalog.request-headers.add=X-Gateway:dacs,X-Route:catalog
+ * route.catalog.request-headers.remove=Cookie
+ * 
+ * Without a file the gateway has the three routes /catalog, /inventory and
+ * /orders to localhost:3001, 3002 and 3003.
+ * 
+ * The file is checked for changes every gateway.routes.reload-seconds (5) and
+ * reloaded without a restart: a new RouteTable is built and swapped in, so
+ * requests in progress keep using the table they started with. A route whose
+ * instances and balancer did not change keeps its UpstreamPool, and with it the
+ * health state of its instances. If the new file has an error the old table is
+ * kept.
+ * 
+ * gateway.balancer, gateway.ejection.max-failures, gateway.ejection.base-ms and
+ * gateway.ejection.max-percent are the defaults for the UpstreamPool of every
+ * route.
+ */
+@Component
+class GatewayRoutes {
+
+    private static final Logger log = LoggerFactory.getLogger(GatewayRoutes.class);
+
+    private static final String DEFAULT_ROUTES = String.join("\n",
+            "route.catalog.prefix=/catalog",
+            "route.catalog.upstreams=http://localhost:3001",
+            "route.inventory.prefix=/inventory",
+            "route.inventory.upstreams=http://localhost:3002",
+            "route.orders.prefix=/orders",
+            "route.orders.upstreams=http://localhost:3003");
+
+    private final Path file;
+    private final UpstreamPool.Balancer defaultBalancer;
+    private final int maxFailures;
+    private final long baseEjectionMillis;
+    private final int maxEjectedPercent;
+    private final AtomicReference<RouteTable> table = new AtomicReference<>();
+    private final ScheduledExecutorService reloader;
+    private long lastModified;
+
+    GatewayRoutes(@Value("${gateway.routes.file:}") String file,
+            @Value("${gateway.routes.reload-seconds:5}") int reloadSeconds,
+            @Value("${gateway.balancer:ROUND_ROBIN}") UpstreamPool.Balancer balancer,
+            @Value("${gateway.ejection.max-failures:5}") int maxFailures,
+            @Value("${gateway.ejection.base-ms:10000}") long baseEjectionMillis,
+            @Value("${gateway.ejection.max-percent:50}") int maxEjectedPercent) throws IOException {
+        this.file = file.isEmpty() ? null : Paths.get(file);
+        this.defaultBalancer = balancer;
+        this.maxFailures = maxFailures;
+        this.baseEjectionMillis = baseEjectionMillis;
+        this.maxEjectedPercent = maxEjectedPercent;
+
+        Properties properties = new Properties();
+        if (this.file == null) {
+            properties.load(new StringReader(DEFAULT_ROUTES));
+        } else {
+            lastModified = Files.getLastModifiedTime(this.file).toMillis();
+            properties = read(this.file);
+        }
+        table.set(compile(properties, null));
+
+        reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "gateway-routes-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (this.file != null) {
+            reloader.scheduleWithFixedDelay(this::reloadIfChanged, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        reloader.shutdownNow();
+    }
+
+    /** Returns the route for a request path, or null if no route matches. */
+    Route match(String path) {
+        return table.get().match(path);
+    }
+
+    private void reloadIfChanged() {
+        try {
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (modified == lastModified) {
+                return;
+            }
+            table.set(compile(read(file), table.get()));
+            lastModified = modified;
+            log.info("Reloaded routes from {}", file);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not reload routes from {}, keeping the old routes", file, e);
+        }
+    }
+
+    private static Properties read(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private RouteTable compile(Properties properties, RouteTable previous) {
+        Set<String> names = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            String[] parts = key.split("\\.");
+            if (parts.length >= 3 && parts[0].equals("route")) {
+                names.add(parts[1]);
+            }
+        }
+
+        List<Route> routes = new ArrayList<>();
+        for (String name : names) {
+            String prefix = required(properties, name, "prefix");
+            List<String> upstreams = Arrays.asList(required(properties, name, "upstreams").split(","));
+            UpstreamPool.Balancer balancer = UpstreamPool.Balancer.valueOf(
+                    properties.getProperty("route." + name + ".balancer", defaultBalancer.name()));
+
+            Map<String, String> add = new LinkedHashMap<>();
+            for (String header : list(properties.getProperty("route." + name + ".request-headers.add"))) {
+                String[] nameAndValue = header.split(":", 2);
+                add.put(nameAndValue[0].trim(), nameAndValue[1].trim());
+            }
+            Set<String> remove = new HashSet<>();
+            for (String header : list(properties.getProperty("route." + name + ".request-headers.remove"))) {
+                remove.add(header);
+            }
+
+            routes.add(new Route(name, prefix, pool(name, upstreams, balancer, previous), add, remove));
+        }
+        return new RouteTable(routes);
+    }
+
+    private UpstreamPool pool(String name, List<String> upstreams, UpstreamPool.Balancer balancer,
+            RouteTable previous) {
+        if (previous != null) {
+            for (Route route : previous.getRoutes()) {
+                UpstreamPool pool = route.getPool();
+                if (route.getName().equals(name) && pool.getBalancer() == balancer
+                        && pool.getBaseUrls().equals(trimmed(upstreams))) {
+                    return pool;
+                }
+            }
+        }
+        return new UpstreamPool(name, upstreams, balancer, maxFailures, baseEjectionMillis, maxEjectedPercent);
+    }
+
+    private static String required(Properties properties, String route, String key) {
+        String value = properties.getProperty("route." + route + "." + key);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Route " + route + " has no " + key);
+        }
+        return value.trim();
+    }
+
+    private static List<String> list(String value) {
+        List<String> items = new ArrayList<>();
+        if (value != null) {
+            for (String item : value.split(",")) {
+                if (!item.isBlank()) {
+                    items.add(item.trim());
+                }
+            }
+        }
+        return items;
+    }
+
+    private static List<String> trimmed(List<String> values) {
+        List<String> result = new ArrayList<>();
+        for (String value : values) {
+            result.add(value.trim());
+        }
+        return result;
+    }
+
+    Map<String, Object> metrics() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (Route route : table.get().getRoutes()) {
+            map.put(route.getName(), route.getPool().metrics());
+        }
+        return map;
+    }
+}
@@ -0,0 +1,117 @@
+package architectures.microservices.example_gateway;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntSupplier;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Compares the old header copying of proxyRequest (a new HttpHeaders, and
+ * getHeader and set for every header name) with the HeaderPipeline, for a
+ * request with the headers a browser typically sends. Prints the time and the
+ * bytes allocated per request, measured with the allocation counter of the
+ * current thread.
+ * 
+ * Needs spring-web and the servlet API on the classpath, like the gateway.
+ */
+public class HeaderForwardingBenchmark {
+
+    private static final int ITERATIONS = 1_000_000;
+
+    public static void main(String[] args) {
+        HttpServletRequest request = browserRequest();
+        Route route = new Route("catalog", "/catalog",
+                new UpstreamPool("catalog", List.of("http://localhost:3001"), UpstreamPool.Balancer.ROUND_ROBIN, 5,
+                        10_000, 50),
+                Map.of("X-Gateway", "dacs"), Set.of("Cookie"));
+        HeaderPipeline pipeline = new HeaderPipeline("", "");
+
+        // The first rounds warm up the JIT.
+        for (int round = 0; round < 3; round++) {
+            measure("old copy", () -> oldCopy(request).size());
+            measure("HeaderPipeline", () -> pipeline.requestHeaders(request, route).size());
+        }
+    }
+
+    private static HttpHeaders oldCopy(HttpServletRequest request) {
+        HttpHeaders headers = new HttpHeaders();
+        Enumeration<String> headerNames = request.getHeaderNames();
+        while (headerNames.hasMoreElements()) {
+            String headerName = headerNames.nextElement();
+            if (!headerName.equalsIgnoreCase("Host")) {
+                headers.set(headerName, request.getHeader(headerName));
+            }
+        }
+        return headers;
+    }
+
+    private static void measure(String label, IntSupplier copy) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long sink = 0;
+        long bytesBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += copy.getAsInt();
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+        System.out.printf("%-16s %7.1f ns/request %7.0f bytes/request (%d)%n", label, (double) nanos / ITERATIONS,
+                (double) bytes / ITERATIONS, sink);
+    }
+
+    /** A request with fixed headers; only the header methods are implemented. */
+    private static HttpServletRequest browserRequest() {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Host", "localhost:8080");
+        headers.put("Connection", "keep-alive");
+        headers.put("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)");
+        headers.put("Accept", "application/json, text/plain, */*");
+        headers.put("Accept-Encoding", "gzip, deflate, br");
+        headers.put("Accept-Language", "en-US,en;q=0.9,nl;q=0.8");
+        headers.put("Cache-Control", "no-cache");
+        headers.put("Referer", "http://localhost:8080/catalog/");
+        headers.put("Cookie", "session=abc123; theme=dark");
+        headers.put("Sec-Fetch-Mode", "cors");
+        headers.put("Sec-Fetch-Site", "same-origin");
+        headers.put("Sec-Fetch-Dest", "empty");
+        headers.put("Keep-Alive", "timeout=5");
+        headers.put("DNT", "1");
+
+        return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, method, methodArgs) -> {
+                    switch (method.getName()) {
+                    case "getHeaderNames":
+                        return Collections.enumeration(headers.keySet());
+                    case "getHeader":
+                        return find(headers, (String) methodArgs[0]);
+                    case "getHeaders": {
+                        String value = find(headers, (String) methodArgs[0]);
+                        return value == null ? Collections.emptyEnumeration()
+                                : Collections.enumeration(Collections.singletonList(value));
+                    }
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static String find(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+}
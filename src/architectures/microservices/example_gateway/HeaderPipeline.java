@@ -0,0 +1,153 @@
+package architectures.microservices.example_gateway;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+/**
+ * Decides which headers are forwarded, in both directions, and copies them
+ * with as little garbage as possible.
+ * 
+ * - Hop-by-hop headers (Connection, Keep-Alive, Transfer-Encoding, ...) and
+ * every header named in the Connection header belong to one connection and are
+ * never forwarded. Host is replaced by the host of the service, and
+ * Content-Length is set again for the body that is actually sent.
+ * - gateway.headers.deny lists request headers that are never forwarded, and
+ * when gateway.headers.allow is not empty only those request headers are
+ * forwarded. A route can remove and add headers of its own.
+ * 
+ * All the sets are built once and are case-insensitive TreeSets, so checking a
+ * header name does not create a lower case copy of it. Most headers have a
+ * single value, and the values of a few headers repeat from request to
+ * request (SHARED_HEADERS: Accept, Accept-Encoding, ...), so the immutable
+ * one-element lists for those values are shared between requests instead of
+ * creating a new list for every request. Values of other headers, such as
+ * Authorization, Cookie or request ids, are never kept.
+ */
+@Component
+class HeaderPipeline {
+
+    static final Set<String> HOP_BY_HOP = caseInsensitive(Arrays.asList("Connection", "Keep-Alive",
+            "Proxy-Connection", "Proxy-Authenticate", "Proxy-Authorization", "TE", "Trailer", "Transfer-Encoding",
+            "Upgrade", "Host", "Content-Length"));
+
+    static final Set<String> SHARED_HEADERS = caseInsensitive(Arrays.asList("Accept", "Accept-Encoding",
+            "Accept-Language", "User-Agent", "Content-Type"));
+
+    private static final int MAX_SHARED_VALUES = 4096;
+
+    private final Set<String> deny;
+    private final Set<String> allow;
+    private final Map<String, List<String>> sharedValues = new ConcurrentHashMap<>();
+
+    HeaderPipeline(@Value("${gateway.headers.deny:}") String deny, @Value("${gateway.headers.allow:}") String allow) {
+        this.deny = caseInsensitive(split(deny));
+        this.allow = caseInsensitive(split(allow));
+    }
+
+    /** Returns the headers to send to the service for this request. */
+    HttpHeaders requestHeaders(HttpServletRequest request, Route route) {
+        // Presized, and case-insensitive like a normal HttpHeaders.
+        HttpHeaders headers = new HttpHeaders(CollectionUtils.toMultiValueMap(
+                new LinkedCaseInsensitiveMap<>(32, Locale.ENGLISH)));
+        forwardRequestHeaders(request, route, headers::put);
+        headers.putAll(route.getAddRequestHeaders());
+        return headers;
+    }
+
+    /**
+     * Passes every request header that may be forwarded to sink, with all its
+     * values. The headers the route adds are not included.
+     */
+    void forwardRequestHeaders(HttpServletRequest request, Route route, BiConsumer<String, List<String>> sink) {
+        Set<String> connectionTokens = connectionTokens(request.getHeader(HttpHeaders.CONNECTION));
+        Enumeration<String> names = request.getHeaderNames();
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            if (HOP_BY_HOP.contains(name) || deny.contains(name) || (!allow.isEmpty() && !allow.contains(name))
+                    || route.getRemoveRequestHeaders().contains(name) || connectionTokens.contains(name)) {
+                continue;
+            }
+            sink.accept(name, values(name, request.getHeaders(name)));
+        }
+    }
+
+    /** Returns the headers of a service response that may go to the client. */
+    HttpHeaders responseHeaders(HttpHeaders upstream) {
+        Set<String> connectionTokens = connectionTokens(upstream.getFirst(HttpHeaders.CONNECTION));
+        HttpHeaders headers = new HttpHeaders(CollectionUtils.toMultiValueMap(
+                new LinkedCaseInsensitiveMap<>(upstream.size() * 2, Locale.ENGLISH)));
+        for (Map.Entry<String, List<String>> header : upstream.entrySet()) {
+            String name = header.getKey();
+            if (!HOP_BY_HOP.contains(name) && !connectionTokens.contains(name)) {
+                // The value lists of the upstream response are reused, not copied.
+                headers.put(name, header.getValue());
+            }
+        }
+        return headers;
+    }
+
+    private List<String> values(String name, Enumeration<String> values) {
+        String first = values.nextElement();
+        if (!values.hasMoreElements()) {
+            return SHARED_HEADERS.contains(name) ? shared(first) : Collections.singletonList(first);
+        }
+        List<String> all = new ArrayList<>(2);
+        all.add(first);
+        while (values.hasMoreElements()) {
+            all.add(values.nextElement());
+        }
+        return all;
+    }
+
+    private List<String> shared(String value) {
+        List<String> list = sharedValues.get(value);
+        if (list == null) {
+            list = Collections.singletonList(value);
+            // Bounded, in case a client sends many different User-Agents.
+            if (sharedValues.size() < MAX_SHARED_VALUES) {
+                sharedValues.putIfAbsent(value, list);
+            }
+        }
+        return list;
+    }
+
+    private static Set<String> connectionTokens(String connection) {
+        if (connection == null || connection.equalsIgnoreCase("keep-alive") || connection.equalsIgnoreCase("close")) {
+            return Collections.emptySet();
+        }
+        return caseInsensitive(split(connection));
+    }
+
+    private static List<String> split(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.isBlank()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    private static Set<String> caseInsensitive(List<String> names) {
+        Set<String> set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        set.addAll(names);
+        return Collections.unmodifiableSet(set);
+    }
+}
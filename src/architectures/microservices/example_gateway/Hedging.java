@@ -0,0 +1,231 @@
+package architectures.microservices.example_gateway;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hedged requests for idempotent (GET and HEAD) requests.
+ * 
+ * The first attempt is sent to one instance. If it has not answered after the
+ * hedge delay, a second attempt is sent to another instance, and whichever
+ * answers first (without a 5xx) is used. The hedge delay is a percentile of the
+ * recent latencies of the route (gateway.hedge.percentile, default 95), so only
+ * the slowest few percent of the requests are hedged. An attempt that fails
+ * quickly is retried on another instance. When the route has no other
+ * instance that is not ejected, no hedge or retry is sent at all.
+ * 
+ * Every hedge and retry costs a token of the RetryBudget of the route, so the
+ * extra load stays below gateway.hedge.budget-ratio of the requests even when
+ * the whole service is slow.
+ * 
+ * The losing attempt cannot be aborted: it finishes in the background and its
+ * connection goes back to the pool.
+ * 
+ * Settings: gateway.hedge.routes (default all three), gateway.hedge.percentile,
+ * gateway.hedge.default-delay-ms (until enough latencies were seen),
+ * gateway.hedge.min-delay-ms, gateway.hedge.budget-ratio,
+ * gateway.hedge.budget-burst and gateway.hedge.threads.
+ */
+@Component
+class Hedging {
+
+    static final class RouteState {
+        final LatencyTracker latencies;
+        final RetryBudget budget;
+        final LongAdder hedges = new LongAdder();
+        final LongAdder hedgesWon = new LongAdder();
+        final LongAdder retries = new LongAdder();
+
+        RouteState(LatencyTracker latencies, RetryBudget budget) {
+            this.latencies = latencies;
+            this.budget = budget;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("hedgeDelayMs", latencies.getPercentileNanos() / 1e6);
+            map.put("hedges", hedges.sum());
+            map.put("hedgesWon", hedgesWon.sum());
+            map.put("retries", retries.sum());
+            map.put("budgetExhausted", budget.getExhausted());
+            return map;
+        }
+    }
+
+    private final Set<String> routes;
+    private final Map<String, RouteState> states = new ConcurrentHashMap<>();
+    private final double percentile;
+    private final long defaultDelayMillis;
+    private final long minDelayNanos;
+    private final double budgetRatio;
+    private final int budgetBurst;
+    private final ThreadPoolExecutor executor;
+
+    Hedging(@Value("${gateway.hedge.routes:catalog,inventory,orders}") String routes,
+            @Value("${gateway.hedge.percentile:95}") double percentile,
+            @Value("${gateway.hedge.default-delay-ms:100}") long defaultDelayMillis,
+            @Value("${gateway.hedge.min-delay-ms:2}") long minDelayMillis,
+            @Value("${gateway.hedge.budget-ratio:0.1}") double budgetRatio,
+            @Value("${gateway.hedge.budget-burst:10}") int budgetBurst,
+            @Value("${gateway.hedge.threads:200}") int threads) {
+        this.routes = new HashSet<>(Arrays.asList(routes.split(",")));
+        this.percentile = percentile;
+        this.defaultDelayMillis = defaultDelayMillis;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.budgetRatio = budgetRatio;
+        this.budgetBurst = budgetBurst;
+        // No queue: when all threads are busy the attempt runs on the caller's thread, without hedging.
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    boolean isEnabled(String route) {
+        return routes.contains(route);
+    }
+
+    /**
+     * Sends a request with hedging. attempt sends the request to the given
+     * instance; it must be safe to call it more than once.
+     */
+    ResponseEntity<byte[]> send(String route, UpstreamPool pool,
+            Function<Upstream, ResponseEntity<byte[]>> attempt) {
+        RouteState state = state(route);
+        state.budget.onRequest();
+
+        Upstream firstInstance = pool.choose();
+        CompletableFuture<ResponseEntity<byte[]>> first;
+        try {
+            first = CompletableFuture.supplyAsync(() -> timed(state, attempt, firstInstance), executor);
+        } catch (RejectedExecutionException e) {
+            return attempt.apply(firstInstance);
+        }
+
+        long delay = Math.max(minDelayNanos, state.latencies.getPercentileNanos());
+        try {
+            ResponseEntity<byte[]> response = first.get(delay, TimeUnit.NANOSECONDS);
+            if (!response.getStatusCode().is5xxServerError() || !pool.hasAlternative(firstInstance)
+                    || !state.budget.tryAcquire()) {
+                return response;
+            }
+            state.retries.increment();
+            return attempt.apply(pool.choose(firstInstance));
+        } catch (ExecutionException e) {
+            // The first attempt failed fast (e.g. connection refused): retry elsewhere if the budget allows.
+            if (!pool.hasAlternative(firstInstance) || !state.budget.tryAcquire()) {
+                throw unwrap(e.getCause());
+            }
+            state.retries.increment();
+            return attempt.apply(pool.choose(firstInstance));
+        } catch (TimeoutException e) {
+            // A hedge to the same slow instance would only add to its load.
+            if (!pool.hasAlternative(firstInstance) || !state.budget.tryAcquire()) {
+                return join(first);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+
+        state.hedges.increment();
+        Upstream secondInstance = pool.choose(firstInstance);
+        CompletableFuture<ResponseEntity<byte[]>> second;
+        try {
+            second = CompletableFuture.supplyAsync(() -> timed(state, attempt, secondInstance), executor);
+        } catch (RejectedExecutionException e) {
+            return join(first);
+        }
+        return join(firstSuccessful(first, second, state.hedgesWon));
+    }
+
+    /**
+     * Completes with the first attempt that answers without a 5xx, or with the
+     * outcome of the last attempt if none does. Counts in secondWins how often
+     * the hedge was the one that was used.
+     */
+    private static CompletableFuture<ResponseEntity<byte[]>> firstSuccessful(
+            CompletableFuture<ResponseEntity<byte[]>> first, CompletableFuture<ResponseEntity<byte[]>> second,
+            LongAdder secondWins) {
+        CompletableFuture<ResponseEntity<byte[]>> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        for (CompletableFuture<ResponseEntity<byte[]>> attempt : Arrays.asList(first, second)) {
+            attempt.whenComplete((response, error) -> {
+                boolean last = pending.decrementAndGet() == 0;
+                if (error == null && !response.getStatusCode().is5xxServerError()) {
+                    if (result.complete(response) && attempt == second) {
+                        secondWins.increment();
+                    }
+                } else if (last) {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(response);
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    private static ResponseEntity<byte[]> timed(RouteState state, Function<Upstream, ResponseEntity<byte[]>> attempt,
+            Upstream instance) {
+        long start = System.nanoTime();
+        ResponseEntity<byte[]> response = attempt.apply(instance);
+        state.latencies.record(System.nanoTime() - start);
+        return response;
+    }
+
+    private static ResponseEntity<byte[]> join(CompletableFuture<ResponseEntity<byte[]>> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+    }
+
+    private RouteState state(String route) {
+        return states.computeIfAbsent(route, r -> new RouteState(new LatencyTracker(percentile, defaultDelayMillis),
+                new RetryBudget(budgetRatio, budgetBurst)));
+    }
+
+    Map<String, Object> metrics() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        states.forEach((route, state) -> map.put(route, state.toMap()));
+        return map;
+    }
+}
@@ -0,0 +1,54 @@
+package architectures.microservices.example_gateway;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the latencies of the last SAMPLES requests of a route in a ring buffer
+ * and knows a percentile of them.
+ * 
+ * Sorting the samples on every request would cost more than the request
+ * itself, so the percentile is only recomputed every RECOMPUTE_EVERY samples;
+ * in between the last value is used.
+ */
+class LatencyTracker {
+    private static final int SAMPLES = 1024;
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final AtomicLongArray samples = new AtomicLongArray(SAMPLES);
+    private final AtomicLong count = new AtomicLong();
+    private final double percentile;
+    private final long defaultNanos;
+    private volatile long percentileNanos;
+
+    LatencyTracker(double percentile, long defaultMillis) {
+        this.percentile = percentile;
+        this.defaultNanos = TimeUnit.MILLISECONDS.toNanos(defaultMillis);
+        this.percentileNanos = defaultNanos;
+    }
+
+    void record(long nanos) {
+        long n = count.getAndIncrement();
+        samples.set((int) (n % SAMPLES), nanos);
+        if ((n + 1) % RECOMPUTE_EVERY == 0) {
+            recompute((int) Math.min(n + 1, SAMPLES));
+        }
+    }
+
+    private void recompute(int size) {
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        percentileNanos = sorted[Math.max(0, Math.min(index, size - 1))];
+    }
+
+    /** The percentile, or the default until enough requests were seen. */
+    long getPercentileNanos() {
+        return count.get() < RECOMPUTE_EVERY ? defaultNanos : percentileNanos;
+    }
+}
@@ -0,0 +1,132 @@
+package architectures.microservices.example_gateway;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limits the requests of every client on every route to
+ * gateway.ratelimit.rate per second, with bursts of up to
+ * gateway.ratelimit.burst requests.
+ * 
+ * The client is identified by its address. A client that sends one of the
+ * keys in gateway.ratelimit.api-keys in the gateway.ratelimit.client-header
+ * header (X-Api-Key) is identified by that key instead. Other header values
+ * are ignored, so a client cannot get a fresh bucket by sending a new value.
+ * 
+ * Each bucket is a token bucket kept as a single AtomicLong, the time at which
+ * it would be full again (the "theoretical arrival time" of the generic cell
+ * rate algorithm). A request moves that time one interval forward unless it is
+ * already more than a burst ahead of now. So a request costs one map lookup
+ * and usually one compareAndSet, without any lock.
+ * 
+ * Buckets that have been full for gateway.ratelimit.idle-seconds are removed,
+ * so the map does not grow with every client ever seen.
+ * 
+ * Off by default, enable it with gateway.ratelimit.enabled=true.
+ */
+@Component
+class RateLimiter {
+
+    private final boolean enabled;
+    private final String clientHeader;
+    private final Set<String> apiKeys;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final long idleNanos;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService cleaner;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    RateLimiter(@Value("${gateway.ratelimit.enabled:false}") boolean enabled,
+            @Value("${gateway.ratelimit.rate:50}") double ratePerSecond,
+            @Value("${gateway.ratelimit.burst:100}") int burst,
+            @Value("${gateway.ratelimit.client-header:X-Api-Key}") String clientHeader,
+            @Value("${gateway.ratelimit.api-keys:}") String apiKeys,
+            @Value("${gateway.ratelimit.idle-seconds:60}") int idleSeconds) {
+        this.enabled = enabled;
+        this.clientHeader = clientHeader;
+        this.apiKeys = new HashSet<>();
+        for (String apiKey : apiKeys.split(",")) {
+            if (!apiKey.isBlank()) {
+                this.apiKeys.add(apiKey.trim());
+            }
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        this.burstNanos = intervalNanos * burst;
+        this.idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+
+        cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "gateway-ratelimit-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            cleaner.scheduleWithFixedDelay(this::removeIdle, idleSeconds, idleSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        cleaner.shutdownNow();
+    }
+
+    /**
+     * Takes a token from the bucket of the client of the request on the route.
+     * Returns 0 if the request may be sent, otherwise the number of seconds
+     * after which the client should try again.
+     */
+    long tryAcquire(HttpServletRequest request, String route) {
+        if (!enabled) {
+            return 0;
+        }
+        String apiKey = request.getHeader(clientHeader);
+        String client = apiKey != null && apiKeys.contains(apiKey) ? "key:" + apiKey : request.getRemoteAddr();
+        long now = System.nanoTime();
+        AtomicLong bucket = buckets.computeIfAbsent(client + '\n' + route, key -> new AtomicLong(now));
+        while (true) {
+            long full = bucket.get();
+            long start = full - now > 0 ? full : now;
+            if (start - now >= burstNanos) {
+                rejected.increment();
+                long waitNanos = start - now - burstNanos + intervalNanos;
+                return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos));
+            }
+            if (bucket.compareAndSet(full, start + intervalNanos)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    private void removeIdle() {
+        long idleSince = System.nanoTime() - idleNanos;
+        // A bucket that is full again since idleSince allows a whole burst
+        // either way, so dropping it changes nothing for its client.
+        buckets.entrySet().removeIf(entry -> entry.getValue().get() - idleSince < 0);
+    }
+
+    Map<String, Object> metrics() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", enabled);
+        map.put("buckets", buckets.size());
+        map.put("allowed", allowed.sum());
+        map.put("rejected", rejected.sum());
+        return map;
+    }
+}
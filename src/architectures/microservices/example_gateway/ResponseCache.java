@@ -0,0 +1,468 @@
+package architectures.microservices.example_gateway;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+/**
+ * A cache of service responses inside the gateway.
+ * 
+ * Only GET requests on the routes in gateway.cache.routes are cached. A
+ * response is identified by the method, the URL and the values of the request
+ * headers in gateway.cache.key-headers. The cache follows the Cache-Control
+ * and ETag headers of the service:
+ * 
+ * - no-store or private responses are not cached, and neither are responses
+ * with Set-Cookie, which would hand one client's cookie to every client;
+ * - responses to requests with Authorization or Cookie are only cached when
+ * they are public or have s-maxage, since this cache is shared by all
+ * clients;
+ * - a response with Vary: * is not cached, and a response with other Vary
+ * headers is only served to requests with the same values of those headers;
+ * - a response is fresh for max-age (or s-maxage) seconds and served from the
+ * cache without asking the service;
+ * - a response that is no longer fresh but has an ETag is still served for up
+ * to gateway.cache.max-stale-seconds, while a background request with
+ * If-None-Match asks the service whether it changed (a 304 Not Modified
+ * answer makes it fresh again);
+ * - after that, or for no-cache, must-revalidate and proxy-revalidate
+ * responses, the gateway first revalidates the response before it is served.
+ * 
+ * The cache is bounded by the total size of the cached responses
+ * (gateway.cache.max-bytes). When it is full the least recently used (LRU) or
+ * the least frequently used (LFU) response is evicted, set with
+ * gateway.cache.eviction. Hits, misses and revalidations are counted per route.
+ * 
+ * A hit takes no lock: the entries are in a ConcurrentHashMap, and the hit is
+ * only added to a buffer of accesses. The buffer is applied to the eviction
+ * order in batches, by whichever thread gets the lock, so the order is
+ * approximate and an access may be dropped when the buffer is full. The
+ * eviction order is a TreeSet sorted by last use (LRU) or number of uses
+ * (LFU), so an access or an eviction costs O(log n) instead of a scan.
+ * Every response gets an X-Cache header that tells how it was served.
+ */
+@Component
+class ResponseCache {
+
+    enum Eviction {
+        LRU, LFU
+    }
+
+    static final class RouteStats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder staleHits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder revalidations = new LongAdder();
+        final LongAdder notModified = new LongAdder();
+        final LongAdder backgroundRevalidations = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+
+        Map<String, Object> toMap() {
+            // A revalidation answered with 304 still served the body from the cache.
+            long fromCache = hits.sum() + staleHits.sum() + notModified.sum();
+            long requests = hits.sum() + staleHits.sum() + misses.sum() + revalidations.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("hits", hits.sum());
+            map.put("staleHits", staleHits.sum());
+            map.put("misses", misses.sum());
+            map.put("revalidations", revalidations.sum());
+            map.put("notModified", notModified.sum());
+            map.put("backgroundRevalidations", backgroundRevalidations.sum());
+            map.put("evictions", evictions.sum());
+            map.put("hitRate", requests == 0 ? 0.0 : (double) fromCache / requests);
+            return map;
+        }
+    }
+
+    /**
+     * A response served from the cache. The ResponseCompressor keeps the
+     * bodies it compressed for it with the cache entry, so hits do not
+     * compress the same body again. These are not counted in
+     * gateway.cache.max-bytes, and go away with the entry.
+     */
+    static final class CachedResponse extends ResponseEntity<byte[]> {
+        private final Map<String, byte[]> encodedBodies;
+
+        CachedResponse(byte[] body, HttpHeaders headers, int status, Map<String, byte[]> encodedBodies) {
+            super(body, headers, status);
+            this.encodedBodies = encodedBodies;
+        }
+
+        byte[] getEncodedBody(String encoding) {
+            return encodedBodies.get(encoding);
+        }
+
+        void putEncodedBody(String encoding, byte[] body) {
+            encodedBodies.put(encoding, body);
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final String route;
+        final int status;
+        final HttpHeaders headers;
+        final byte[] body;
+        final String etag;
+        // The request headers named by Vary, with the values they had.
+        final Map<String, List<String>> vary;
+        final boolean mustRevalidate;
+        final long size;
+        volatile long maxAgeNanos;
+        volatile long expiresAt;
+        final AtomicBoolean revalidating = new AtomicBoolean();
+        // The body compressed by the ResponseCompressor, by encoding.
+        final Map<String, byte[]> encodedBodies = new ConcurrentHashMap<>();
+        // Break ties in the eviction order: the entry added first goes first.
+        final long sequence;
+        // The last access (LRU) or the number of accesses (LFU), guarded by the
+        // policy lock, and only changed while the entry is not in the order.
+        long rank;
+
+        Entry(String key, String route, ResponseEntity<byte[]> response, Map<String, List<String>> vary,
+                long maxAgeNanos, boolean mustRevalidate, long size, long sequence) {
+            this.key = key;
+            this.route = route;
+            this.vary = vary;
+            this.status = response.getStatusCodeValue();
+            this.headers = HttpHeaders.readOnlyHttpHeaders(response.getHeaders());
+            this.body = response.getBody();
+            this.etag = response.getHeaders().getETag();
+            this.mustRevalidate = mustRevalidate;
+            this.size = size;
+            this.sequence = sequence;
+            refresh(maxAgeNanos);
+        }
+
+        boolean matches(UpstreamRequest request) {
+            for (Map.Entry<String, List<String>> header : vary.entrySet()) {
+                if (!Objects.equals(header.getValue(), request.getHeaders().get(header.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void refresh(long maxAgeNanos) {
+            this.maxAgeNanos = maxAgeNanos;
+            this.expiresAt = System.nanoTime() + maxAgeNanos;
+        }
+
+        ResponseEntity<byte[]> toResponse(String cacheStatus) {
+            HttpHeaders responseHeaders = new HttpHeaders();
+            responseHeaders.putAll(headers);
+            responseHeaders.set("X-Cache", cacheStatus);
+            return new CachedResponse(body, responseHeaders, status, encodedBodies);
+        }
+    }
+
+    private final Set<String> routes;
+    private final List<String> keyHeaders;
+    private final long maxBytes;
+    private final long maxStaleNanos;
+    private final Eviction eviction;
+    private final AsyncTaskExecutor executor;
+
+    private static final int DRAIN_THRESHOLD = 64;
+    private static final int MAX_PENDING_ACCESSES = 1024;
+
+    // Changed only with the policy lock held, read without it.
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Hits not yet applied to the order.
+    private final Queue<Entry> accesses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingAccesses = new AtomicInteger();
+
+    // Guarded by the policy lock. The first entry of the order is evicted first.
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final TreeSet<Entry> order = new TreeSet<>(
+            Comparator.comparingLong((Entry entry) -> entry.rank).thenComparingLong(entry -> entry.sequence));
+    private long clock;
+    private long bytes;
+    private final Map<String, RouteStats> stats = new ConcurrentHashMap<>();
+
+    ResponseCache(@Value("${gateway.cache.routes:catalog}") String routes,
+            @Value("${gateway.cache.key-headers:Accept,Accept-Encoding,Accept-Language}") String keyHeaders,
+            @Value("${gateway.cache.max-bytes:67108864}") long maxBytes,
+            @Value("${gateway.cache.max-stale-seconds:60}") long maxStaleSeconds,
+            @Value("${gateway.cache.eviction:LRU}") Eviction eviction,
+            AsyncTaskExecutor gatewayAsyncExecutor) {
+        this.routes = new HashSet<>(Arrays.asList(routes.split(",")));
+        this.keyHeaders = Arrays.asList(keyHeaders.split(","));
+        this.maxBytes = maxBytes;
+        this.maxStaleNanos = TimeUnit.SECONDS.toNanos(maxStaleSeconds);
+        this.eviction = eviction;
+        this.executor = gatewayAsyncExecutor;
+    }
+
+    boolean isCacheable(String route, UpstreamRequest request) {
+        return routes.contains(route) && request.getMethod() == HttpMethod.GET
+                && !hasDirective(request.getHeaders(), "no-store");
+    }
+
+    /**
+     * Serves the request from the cache where possible, and otherwise calls
+     * fetch to send it to the service.
+     */
+    ResponseEntity<byte[]> get(String route, UpstreamRequest request,
+            Function<UpstreamRequest, ResponseEntity<byte[]>> fetch) {
+        RouteStats routeStats = stats(route);
+        String key = key(request);
+        Entry entry = lookup(key);
+        if (entry != null && !entry.matches(request)) {
+            // Stored for other values of the Vary headers.
+            entry = null;
+        }
+        boolean clientWantsRevalidation = hasDirective(request.getHeaders(), "no-cache");
+
+        if (entry != null && !entry.mustRevalidate && !clientWantsRevalidation) {
+            long now = System.nanoTime();
+            if (now < entry.expiresAt) {
+                routeStats.hits.increment();
+                return entry.toResponse("HIT");
+            }
+            if (entry.etag != null && now < entry.expiresAt + maxStaleNanos) {
+                routeStats.staleHits.increment();
+                revalidateInBackground(key, entry, request, fetch);
+                return entry.toResponse("STALE");
+            }
+        }
+
+        if (entry != null && entry.etag != null) {
+            routeStats.revalidations.increment();
+            ResponseEntity<byte[]> response = fetch.apply(request.withHeader(HttpHeaders.IF_NONE_MATCH, entry.etag));
+            if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                routeStats.notModified.increment();
+                entry.refresh(maxAgeNanos(response.getHeaders(), entry.maxAgeNanos));
+                return entry.toResponse("REVALIDATED");
+            }
+            store(route, key, request, response);
+            return response;
+        }
+
+        routeStats.misses.increment();
+        ResponseEntity<byte[]> response = fetch.apply(request);
+        store(route, key, request, response);
+        return response;
+    }
+
+    private void revalidateInBackground(String key, Entry entry, UpstreamRequest request,
+            Function<UpstreamRequest, ResponseEntity<byte[]>> fetch) {
+        if (!entry.revalidating.compareAndSet(false, true)) {
+            // Another request already started the revalidation.
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    stats(entry.route).backgroundRevalidations.increment();
+                    ResponseEntity<byte[]> response = fetch
+                            .apply(request.withHeader(HttpHeaders.IF_NONE_MATCH, entry.etag));
+                    if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                        entry.refresh(maxAgeNanos(response.getHeaders(), entry.maxAgeNanos));
+                    } else {
+                        store(entry.route, key, request, response);
+                    }
+                } finally {
+                    entry.revalidating.set(false);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // The executor is busy; a later request will try again.
+            entry.revalidating.set(false);
+        }
+    }
+
+    private Entry lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        int pending = pendingAccesses.incrementAndGet();
+        if (pending > MAX_PENDING_ACCESSES) {
+            // The order is approximate anyway, so drop the access instead of waiting.
+            pendingAccesses.decrementAndGet();
+        } else {
+            accesses.add(entry);
+        }
+        if (pending >= DRAIN_THRESHOLD && policyLock.tryLock()) {
+            try {
+                drainAccesses();
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        return entry;
+    }
+
+    // Called with the policy lock held.
+    private void drainAccesses() {
+        Entry entry;
+        while ((entry = accesses.poll()) != null) {
+            pendingAccesses.decrementAndGet();
+            // An evicted or replaced entry is no longer in the order.
+            if (order.remove(entry)) {
+                entry.rank = eviction == Eviction.LFU ? entry.rank + 1 : ++clock;
+                order.add(entry);
+            }
+        }
+    }
+
+    private void store(String route, String key, UpstreamRequest request, ResponseEntity<byte[]> response) {
+        HttpHeaders headers = response.getHeaders();
+        if (response.getStatusCode() != HttpStatus.OK || hasDirective(headers, "no-store")
+                || hasDirective(headers, "private") || headers.containsKey(HttpHeaders.SET_COOKIE)) {
+            return;
+        }
+        HttpHeaders requestHeaders = request.getHeaders();
+        boolean credentials = requestHeaders.containsKey(HttpHeaders.AUTHORIZATION)
+                || requestHeaders.containsKey(HttpHeaders.COOKIE);
+        if (credentials && !hasDirective(headers, "public") && !hasDirective(headers, "s-maxage")) {
+            // The response may belong to this user only (RFC 7234, section 3.2).
+            return;
+        }
+        Map<String, List<String>> vary = new HashMap<>();
+        for (String header : headers.getVary()) {
+            if (header.equals("*")) {
+                return;
+            }
+            vary.put(header, requestHeaders.get(header));
+        }
+        long maxAge = maxAgeNanos(headers, 0);
+        boolean mustRevalidate = hasDirective(headers, "no-cache") || hasDirective(headers, "must-revalidate")
+                || hasDirective(headers, "proxy-revalidate");
+        if ((maxAge == 0 || mustRevalidate) && headers.getETag() == null) {
+            // Could never be served without asking the service again anyway.
+            return;
+        }
+        long size = size(key, response);
+        if (size > maxBytes) {
+            return;
+        }
+
+        policyLock.lock();
+        try {
+            drainAccesses();
+            Entry entry = new Entry(key, route, response, vary, maxAge, mustRevalidate, size, ++clock);
+            // A new entry counts as one use (LFU) or as used now (LRU).
+            entry.rank = eviction == Eviction.LFU ? 1 : clock;
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                order.remove(previous);
+                bytes -= previous.size;
+            }
+            order.add(entry);
+            bytes += size;
+            while (bytes > maxBytes) {
+                Entry victim = order.pollFirst();
+                entries.remove(victim.key, victim);
+                bytes -= victim.size;
+                stats(victim.route).evictions.increment();
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    private String key(UpstreamRequest request) {
+        StringBuilder key = new StringBuilder().append(request.getMethod()).append(' ').append(request.getPath());
+        for (String header : keyHeaders) {
+            key.append('\n').append(request.getHeaders().getFirst(header));
+        }
+        return key.toString();
+    }
+
+    private static long size(String key, ResponseEntity<byte[]> response) {
+        long size = key.length() + (response.getBody() == null ? 0 : response.getBody().length);
+        for (Map.Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+            size += header.getKey().length();
+            for (String value : header.getValue()) {
+                size += value.length();
+            }
+        }
+        return size;
+    }
+
+    private static long maxAgeNanos(HttpHeaders headers, long defaultNanos) {
+        String cacheControl = headers.getCacheControl();
+        if (cacheControl == null) {
+            return defaultNanos;
+        }
+        long maxAge = -1;
+        for (String directive : cacheControl.split(",")) {
+            String[] nameAndValue = directive.trim().split("=", 2);
+            if (nameAndValue.length < 2) {
+                continue;
+            }
+            try {
+                if (nameAndValue[0].equalsIgnoreCase("s-maxage")) {
+                    // s-maxage is meant for shared caches like this one and wins over max-age.
+                    return TimeUnit.SECONDS.toNanos(Long.parseLong(nameAndValue[1]));
+                }
+                if (nameAndValue[0].equalsIgnoreCase("max-age")) {
+                    maxAge = Long.parseLong(nameAndValue[1]);
+                }
+            } catch (NumberFormatException e) {
+                // Ignore a malformed directive.
+            }
+        }
+        return maxAge < 0 ? defaultNanos : TimeUnit.SECONDS.toNanos(maxAge);
+    }
+
+    private static boolean hasDirective(HttpHeaders headers, String directive) {
+        String cacheControl = headers.getCacheControl();
+        if (cacheControl == null) {
+            return false;
+        }
+        for (String part : cacheControl.split(",")) {
+            if (part.trim().toLowerCase().startsWith(directive)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private RouteStats stats(String route) {
+        return stats.computeIfAbsent(route, r -> new RouteStats());
+    }
+
+    Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        policyLock.lock();
+        try {
+            metrics.put("entries", entries.size());
+            metrics.put("bytes", bytes);
+        } finally {
+            policyLock.unlock();
+        }
+        metrics.put("maxBytes", maxBytes);
+        Map<String, Object> perRoute = new LinkedHashMap<>();
+        stats.forEach((route, routeStats) -> perRoute.put(route, routeStats.toMap()));
+        metrics.put("routes", perRoute);
+        return metrics;
+    }
+}
@@ -0,0 +1,231 @@
+package architectures.microservices.example_gateway;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compresses service responses for clients that accept it.
+ * 
+ * The encoding is negotiated with the Accept-Encoding header of the client
+ * (gzip or deflate, by their q-values, gzip if both are equally good). Only
+ * responses of at least gateway.compression.min-bytes with a compressible
+ * content type (JSON, XML, text) that the service did not compress itself are
+ * compressed, and no partial (206) responses, whose Content-Range refers to
+ * the uncompressed bytes.
+ * 
+ * A response served from the ResponseCache is compressed only once per
+ * encoding: the compressed body is kept with the cache entry and reused for
+ * later hits.
+ * 
+ * Compressing costs CPU, so it runs on its own small pool of
+ * gateway.compression.threads threads with a bounded queue, and not on the
+ * request threads. When the pool and its queue are full the response is simply
+ * sent uncompressed instead of waiting.
+ * 
+ * Off by default, enable it with gateway.compression.enabled=true.
+ */
+@Component
+class ResponseCompressor {
+
+    private static final List<MediaType> COMPRESSIBLE = Arrays.asList(MediaType.APPLICATION_JSON,
+            MediaType.parseMediaType("application/*+json"), MediaType.APPLICATION_XML,
+            MediaType.parseMediaType("application/*+xml"), MediaType.parseMediaType("application/javascript"),
+            MediaType.parseMediaType("text/*"));
+
+    private final boolean enabled;
+    private final int minBytes;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder skippedBusy = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    ResponseCompressor(@Value("${gateway.compression.enabled:false}") boolean enabled,
+            @Value("${gateway.compression.min-bytes:1024}") int minBytes,
+            @Value("${gateway.compression.threads:2}") int threads,
+            @Value("${gateway.compression.queue:256}") int queue) {
+        this.enabled = enabled;
+        this.minBytes = minBytes;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queue), r -> {
+                    Thread thread = new Thread(r, "gateway-compression");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the response compressed for the client, or the response as it is
+     * when it should not or cannot be compressed now.
+     */
+    CompletableFuture<ResponseEntity<byte[]>> compress(ResponseEntity<byte[]> response, String acceptEncoding) {
+        String encoding = enabled ? negotiate(acceptEncoding) : null;
+        if (encoding == null || !isCompressible(response)) {
+            return CompletableFuture.completedFuture(response);
+        }
+        if (response instanceof ResponseCache.CachedResponse) {
+            byte[] encoded = ((ResponseCache.CachedResponse) response).getEncodedBody(encoding);
+            if (encoded != null) {
+                reused.increment();
+                return CompletableFuture.completedFuture(encoded(response, encoded, encoding));
+            }
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> encode(response, encoding), executor);
+        } catch (RejectedExecutionException e) {
+            skippedBusy.increment();
+            return CompletableFuture.completedFuture(response);
+        }
+    }
+
+    private boolean isCompressible(ResponseEntity<byte[]> response) {
+        HttpHeaders headers = response.getHeaders();
+        byte[] body = response.getBody();
+        if (body == null || body.length < minBytes || headers.containsKey(HttpHeaders.CONTENT_ENCODING)
+                || response.getStatusCode() == HttpStatus.PARTIAL_CONTENT) {
+            return false;
+        }
+        MediaType contentType = headers.getContentType();
+        if (contentType == null) {
+            return false;
+        }
+        for (MediaType compressible : COMPRESSIBLE) {
+            if (compressible.includes(contentType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ResponseEntity<byte[]> encode(ResponseEntity<byte[]> response, String encoding) {
+        byte[] body = response.getBody();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4);
+        try (OutputStream out = encoding.equals("gzip") ? new GZIPOutputStream(buffer)
+                : new DeflaterOutputStream(buffer)) {
+            out.write(body);
+        } catch (IOException e) {
+            // Cannot happen when writing to memory.
+            throw new IllegalStateException(e);
+        }
+        byte[] encoded = buffer.toByteArray();
+        compressed.increment();
+        bytesIn.add(body.length);
+        bytesOut.add(encoded.length);
+        if (response instanceof ResponseCache.CachedResponse) {
+            ((ResponseCache.CachedResponse) response).putEncodedBody(encoding, encoded);
+        }
+        return encoded(response, encoded, encoding);
+    }
+
+    private static ResponseEntity<byte[]> encoded(ResponseEntity<byte[]> response, byte[] encoded,
+            String encoding) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        headers.set(HttpHeaders.CONTENT_ENCODING, encoding);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        if (!varies(headers, HttpHeaders.ACCEPT_ENCODING)) {
+            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        String etag = headers.getETag();
+        if (etag != null && !etag.startsWith("W/")) {
+            // The compressed bytes differ from the ones the strong ETag was made for.
+            headers.setETag("W/" + etag);
+        }
+        return new ResponseEntity<>(encoded, headers, response.getStatusCode());
+    }
+
+    // True if the Vary header already names the header, or is "*".
+    private static boolean varies(HttpHeaders headers, String header) {
+        for (String vary : headers.getVary()) {
+            if (vary.equals("*") || vary.equalsIgnoreCase(header)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns "gzip", "deflate" or null, based on the Accept-Encoding header. */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        // -1 until the coding is named, then "*" does not apply to it.
+        double gzip = -1;
+        double deflate = -1;
+        double any = 0;
+        for (String part : acceptEncoding.split(",")) {
+            String[] codingAndParams = part.trim().split(";");
+            String coding = codingAndParams[0].trim().toLowerCase();
+            double q = 1;
+            for (int i = 1; i < codingAndParams.length; i++) {
+                String param = codingAndParams[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = q;
+            } else if (coding.equals("deflate")) {
+                deflate = q;
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? "gzip" : "deflate";
+    }
+
+    Map<String, Object> metrics() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", enabled);
+        map.put("compressed", compressed.sum());
+        map.put("reused", reused.sum());
+        map.put("skippedBusy", skippedBusy.sum());
+        map.put("bytesIn", bytesIn.sum());
+        map.put("bytesOut", bytesOut.sum());
+        map.put("bytesSaved", bytesIn.sum() - bytesOut.sum());
+        map.put("queued", executor.getQueue().size());
+        return map;
+    }
+}
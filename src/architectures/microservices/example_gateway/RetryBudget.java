@@ -0,0 +1,50 @@
+package architectures.microservices.example_gateway;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the extra requests (hedges and retries) to a fraction of the normal
+ * requests, so that a slow or failing service does not get even more load from
+ * the gateway.
+ * 
+ * Every request adds ratio tokens, up to maxTokens; every extra request costs
+ * one token. With a ratio of 0.1 at most about 10% extra requests are sent,
+ * plus a burst of maxTokens. Tokens are counted in thousandths so a single
+ * AtomicLong is enough.
+ */
+class RetryBudget {
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long max;
+    private final AtomicLong tokens;
+    private final LongAdder exhausted = new LongAdder();
+
+    RetryBudget(double ratio, int maxTokens) {
+        this.deposit = (long) (ratio * SCALE);
+        this.max = maxTokens * SCALE;
+        this.tokens = new AtomicLong(max);
+    }
+
+    void onRequest() {
+        tokens.accumulateAndGet(deposit, (current, add) -> Math.min(max, current + add));
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            long current = tokens.get();
+            if (current < SCALE) {
+                exhausted.increment();
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    long getExhausted() {
+        return exhausted.sum();
+    }
+}
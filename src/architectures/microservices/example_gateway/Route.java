@@ -0,0 +1,56 @@
+package architectures.microservices.example_gateway;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A compiled route: everything the gateway needs to forward a request that
+ * starts with the prefix, worked out once when the route table is loaded
+ * instead of on every request.
+ */
+final class Route {
+    private final String name;
+    private final String prefix;
+    private final UpstreamPool pool;
+    private final Map<String, List<String>> addRequestHeaders;
+    private final Set<String> removeRequestHeaders;
+
+    Route(String name, String prefix, UpstreamPool pool, Map<String, String> addRequestHeaders,
+            Set<String> removeRequestHeaders) {
+        this.name = name;
+        this.prefix = prefix;
+        this.pool = pool;
+        Map<String, List<String>> add = new LinkedHashMap<>();
+        addRequestHeaders.forEach((header, value) -> add.put(header, List.of(value)));
+        this.addRequestHeaders = Collections.unmodifiableMap(add);
+        Set<String> remove = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        remove.addAll(removeRequestHeaders);
+        this.removeRequestHeaders = Collections.unmodifiableSet(remove);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getPrefix() {
+        return prefix;
+    }
+
+    UpstreamPool getPool() {
+        return pool;
+    }
+
+    /** Headers to set on every request of this route, with immutable values. */
+    Map<String, List<String>> getAddRequestHeaders() {
+        return addRequestHeaders;
+    }
+
+    /** Names of the request headers that are not forwarded (case-insensitive). */
+    Set<String> getRemoveRequestHeaders() {
+        return removeRequestHeaders;
+    }
+}
@@ -0,0 +1,71 @@
+package architectures.microservices.example_gateway;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the route of a request path in a prefix trie of path segments.
+ * 
+ * Every node is one segment of a route prefix, so /catalog/books and /catalog
+ * share the node "catalog". A lookup walks down the trie one segment of the
+ * path at a time and remembers the deepest node that has a route: the route
+ * with the longest matching prefix wins. The cost depends only on the length of
+ * the path, not on the number of routes.
+ * 
+ * A RouteTable is never changed after it is built; a reload builds a new one.
+ */
+final class RouteTable {
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        Route route;
+    }
+
+    private final Node root = new Node();
+    private final List<Route> routes;
+
+    RouteTable(List<Route> routes) {
+        this.routes = List.copyOf(routes);
+        for (Route route : routes) {
+            Node node = root;
+            for (String segment : route.getPrefix().split("/")) {
+                if (!segment.isEmpty()) {
+                    node = node.children.computeIfAbsent(segment, s -> new Node());
+                }
+            }
+            node.route = route;
+        }
+    }
+
+    List<Route> getRoutes() {
+        return routes;
+    }
+
+    /** Returns the route with the longest prefix of path, or null. */
+    Route match(String path) {
+        Node node = root;
+        Route match = root.route;
+        int start = 0;
+        int length = path.length();
+        while (start < length) {
+            if (path.charAt(start) == '/') {
+                start++;
+                continue;
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.children.get(path.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            if (node.route != null) {
+                match = node.route;
+            }
+            start = end;
+        }
+        return match;
+    }
+}
@@ -0,0 +1,59 @@
+package architectures.microservices.example_gateway;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Makes concurrent identical calls share one execution ("single flight").
+ * 
+ * The first thread that calls execute() for a key runs the call. Threads that
+ * call execute() with the same key while it is still running do not run it
+ * again, they wait for the result of the first thread and all get the same
+ * result (or the same exception). Once the call is done the key is forgotten,
+ * so a later call runs again: this is not a cache.
+ */
+class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            shared.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        executed.increment();
+        try {
+            V result = call.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /** Number of calls that really ran. */
+    long getExecuted() {
+        return executed.sum();
+    }
+
+    /** Number of calls that got the result of a call of another thread. */
+    long getShared() {
+        return shared.sum();
+    }
+}
@@ -0,0 +1,81 @@
+package architectures.microservices.example_gateway;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * The controller of the streaming mode of the gateway, see
+ * ApiGatewayApplication.
+ */
+@RestController
+@ConditionalOnProperty(name = "gateway.mode", havingValue = "streaming")
+class StreamingApiController {
+
+    private final GatewayRoutes routes;
+    private final StreamingProxy streamingProxy;
+    private final RateLimiter rateLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    StreamingApiController(GatewayRoutes routes, StreamingProxy streamingProxy, RateLimiter rateLimiter,
+            ConcurrencyLimiter concurrencyLimiter) {
+        this.routes = routes;
+        this.streamingProxy = streamingProxy;
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * Same as ApiController.route, but streams the bodies. A request counts
+     * for the ConcurrencyLimiter until its body has been streamed.
+     */
+    @RequestMapping(value = "/**", method = { RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT,
+            RequestMethod.DELETE })
+    public ResponseEntity<StreamingResponseBody> route(HttpServletRequest request) throws IOException {
+        Route route = routes.match(request.getRequestURI());
+        if (route == null) {
+            return ResponseEntity.notFound().build();
+        }
+        long retryAfterSeconds = rateLimiter.tryAcquire(request, route.getName());
+        if (retryAfterSeconds > 0) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds)).build();
+        }
+        if (!concurrencyLimiter.isEnabled()) {
+            return streamingProxy.proxy(request, route);
+        }
+        ConcurrencyLimiter.Limit limit = concurrencyLimiter.tryAcquire(route.getName());
+        if (limit == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        long start = System.nanoTime();
+        ResponseEntity<StreamingResponseBody> response;
+        try {
+            response = streamingProxy.proxy(request, route);
+        } catch (IOException | RuntimeException e) {
+            concurrencyLimiter.release(limit, start, true);
+            throw e;
+        }
+        boolean failed = response.getStatusCode().is5xxServerError();
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(ConcurrencyLimiter.class.getName(),
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                        concurrencyLimiter.release(limit, start, failed);
+                    }
+                });
+        return response;
+    }
+}
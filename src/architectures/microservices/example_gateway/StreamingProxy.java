@@ -0,0 +1,131 @@
+package architectures.microservices.example_gateway;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Proxies a request without ever holding a whole body in memory.
+ * 
+ * The request body is sent to the service while it is read from the client,
+ * and the response body is copied to the client while it is read from the
+ * service, both through a buffer of BUFFER_SIZE bytes. So the memory used per
+ * request is the same for a 1 KB and a 1 GB body.
+ * 
+ * The response body is copied by a StreamingResponseBody, which runs on the
+ * MVC async executor (see AsyncConfiguration) instead of a container thread.
+ * The container thread is free again as soon as the status and the headers of
+ * the service are known.
+ * 
+ * Used when gateway.mode=streaming.
+ */
+@Component
+class StreamingProxy {
+
+    static final int BUFFER_SIZE = 8 * 1024;
+
+    private final CloseableHttpClient httpClient;
+    private final HeaderPipeline headerPipeline;
+
+    StreamingProxy(CloseableHttpClient upstreamHttpClient, HeaderPipeline headerPipeline) {
+        this.httpClient = upstreamHttpClient;
+        this.headerPipeline = headerPipeline;
+    }
+
+    ResponseEntity<StreamingResponseBody> proxy(HttpServletRequest request, Route route) throws IOException {
+        UpstreamPool pool = route.getPool();
+        Upstream instance = pool.choose();
+        RequestBuilder upstream = RequestBuilder.create(request.getMethod())
+                .setUri(instance.getBaseUrl() + request.getRequestURI()
+                        + (request.getQueryString() == null ? "" : "?" + request.getQueryString()));
+
+        headerPipeline.forwardRequestHeaders(request, route, (name, values) -> {
+            for (String value : values) {
+                upstream.addHeader(name, value);
+            }
+        });
+        route.getAddRequestHeaders().forEach((name, values) -> upstream.setHeader(name, values.get(0)));
+        if (request.getContentLengthLong() > 0 || request.getHeader("Transfer-Encoding") != null) {
+            // A length of -1 makes HttpClient send the body chunked.
+            upstream.setEntity(new InputStreamEntity(request.getInputStream(), request.getContentLengthLong()));
+        }
+
+        pool.onStart(instance);
+        CloseableHttpResponse response;
+        try {
+            response = httpClient.execute(upstream.build());
+        } catch (IOException | RuntimeException e) {
+            pool.onFailure(instance);
+            throw e;
+        }
+        if (response.getStatusLine().getStatusCode() >= 500) {
+            pool.onFailure(instance);
+        } else {
+            pool.onSuccess(instance);
+        }
+        try {
+            return streamBody(request, response);
+        } catch (RuntimeException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamBody(HttpServletRequest request,
+            CloseableHttpResponse response) {
+        HttpHeaders upstreamHeaders = new HttpHeaders();
+        for (Header header : response.getAllHeaders()) {
+            upstreamHeaders.add(header.getName(), header.getValue());
+        }
+        HttpHeaders headers = headerPipeline.responseHeaders(upstreamHeaders);
+        HttpEntity entity = response.getEntity();
+        if (entity != null && entity.getContentLength() >= 0) {
+            headers.setContentLength(entity.getContentLength());
+        }
+
+        StreamingResponseBody body = out -> {
+            try (response) {
+                if (entity != null) {
+                    copy(entity.getContent(), out);
+                }
+            }
+        };
+        // The body may never run: the executor can reject it, or the request
+        // can time out or fail first. The response, and with it the pooled
+        // connection, is closed when the async request ends in any way.
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(CloseableHttpResponse.class.getName(),
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) throws IOException {
+                        response.close();
+                    }
+                });
+        return ResponseEntity.status(response.getStatusLine().getStatusCode()).headers(headers).body(body);
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        out.flush();
+    }
+}
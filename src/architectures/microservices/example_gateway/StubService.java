@@ -0,0 +1,60 @@
+package architectures.microservices.example_gateway;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stand-in for the book services, to try the gateway locally without the
+ * real services. It starts a small HTTP server on each given port; every
+ * request is answered with a bit of JSON that tells which port answered.
+ * 
+ * Usage: StubService [delay ms] [failure percent] port...
+ * e.g. StubService 5 0 3001 3011 3002 3003
+ * 
+ * The delay is the average response time (exponentially distributed, so there
+ * is a tail), and that percentage of the requests is answered with a 503.
+ * Combine it with route.catalog.upstreams=http://localhost:3001,http://localhost:3011
+ * in the routes file (see GatewayRoutes) to see the load balancing and
+ * ejection at work.
+ */
+public class StubService {
+
+    public static void main(String[] args) throws IOException {
+        double delayMillis = Double.parseDouble(args[0]);
+        int failurePercent = Integer.parseInt(args[1]);
+        for (int i = 2; i < args.length; i++) {
+            start(Integer.parseInt(args[i]), delayMillis, failurePercent);
+        }
+    }
+
+    static HttpServer start(int port, double delayMillis, int failurePercent) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/", exchange -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            try {
+                Thread.sleep((long) (-delayMillis * Math.log(1 - random.nextDouble())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getRequestBody().readAllBytes();
+            boolean fail = random.nextInt(100) < failurePercent;
+            byte[] body = ("{\"port\":" + port + ",\"path\":\"" + exchange.getRequestURI().getPath() + "\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(fail ? 503 : 200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        System.out.println("Stub service listening on port " + port);
+        return server;
+    }
+}
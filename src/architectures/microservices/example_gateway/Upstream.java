@@ -0,0 +1,44 @@
+package architectures.microservices.example_gateway;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One instance of a service, e.g. http://localhost:3001, with the numbers the
+ * load balancer and the passive health check need: how many requests are in
+ * progress, how many failed in a row and whether it is ejected.
+ */
+class Upstream {
+    private final String baseUrl;
+    final AtomicInteger active = new AtomicInteger();
+    final AtomicInteger consecutiveFailures = new AtomicInteger();
+    final LongAdder requests = new LongAdder();
+    final LongAdder failures = new LongAdder();
+    // How often this instance was ejected in a row; doubles the ejection time.
+    volatile int ejections;
+    volatile long ejectedUntil;
+
+    Upstream(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    String getBaseUrl() {
+        return baseUrl;
+    }
+
+    boolean isEjected(long now) {
+        return now - ejectedUntil < 0;
+    }
+
+    Map<String, Object> metrics() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("active", active.get());
+        map.put("requests", requests.sum());
+        map.put("failures", failures.sum());
+        map.put("ejected", isEjected(System.nanoTime()));
+        map.put("ejections", ejections);
+        return map;
+    }
+}
@@ -0,0 +1,94 @@
+package architectures.microservices.example_gateway;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * One HTTP client shared by all proxied requests.
+ * 
+ * The connections to the services are kept in a pool and reused (keep-alive),
+ * so a request only pays for opening a connection when no idle one is
+ * available. Connections that stayed idle for too long are closed by a
+ * background thread.
+ * 
+ * Settings (with their defaults):
+ * gateway.pool.max-total=200 connections over all services
+ * gateway.pool.max-per-route=50 connections to one service
+ * gateway.pool.route-limits= per-service overrides, e.g.
+ * localhost:3003=20,localhost:3001=100
+ * gateway.pool.idle-timeout-seconds=30
+ * gateway.timeout.connect-ms=1000
+ * gateway.timeout.pool-ms=500 waiting for a free connection
+ * gateway.timeout.read-ms=5000
+ */
+@Configuration
+class UpstreamClientConfiguration {
+
+    @Bean
+    PoolingHttpClientConnectionManager upstreamConnectionManager(
+            @Value("${gateway.pool.max-total:200}") int maxTotal,
+            @Value("${gateway.pool.max-per-route:50}") int maxPerRoute,
+            @Value("${gateway.pool.route-limits:}") String routeLimits) {
+        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+        manager.setMaxTotal(maxTotal);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        for (String limit : routeLimits.split(",")) {
+            if (limit.isBlank()) {
+                continue;
+            }
+            String[] hostAndLimit = limit.trim().split("=");
+            HttpHost host = HttpHost.create(hostAndLimit[0]);
+            manager.setMaxPerRoute(new HttpRoute(host), Integer.parseInt(hostAndLimit[1]));
+        }
+        return manager;
+    }
+
+    @Bean(destroyMethod = "close")
+    CloseableHttpClient upstreamHttpClient(PoolingHttpClientConnectionManager connectionManager,
+            @Value("${gateway.pool.idle-timeout-seconds:30}") int idleTimeoutSeconds,
+            @Value("${gateway.timeout.connect-ms:1000}") int connectTimeout,
+            @Value("${gateway.timeout.pool-ms:500}") int poolTimeout,
+            @Value("${gateway.timeout.read-ms:5000}") int readTimeout) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(poolTimeout)
+                .setSocketTimeout(readTimeout)
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+                .evictExpiredConnections()
+                .build();
+    }
+
+    @Bean
+    RestTemplate upstreamRestTemplate(CloseableHttpClient upstreamHttpClient) {
+        return restTemplate(new HttpComponentsClientHttpRequestFactory(upstreamHttpClient));
+    }
+
+    /** A RestTemplate that passes error responses of a service on as they are. */
+    static RestTemplate restTemplate(HttpComponentsClientHttpRequestFactory requestFactory) {
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+            @Override
+            public boolean hasError(ClientHttpResponse response) {
+                return false;
+            }
+        });
+        return restTemplate;
+    }
+}
@@ -0,0 +1,199 @@
+package architectures.microservices.example_gateway;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The instances of one service and the load balancing over them.
+ * 
+ * Balancers:
+ * ROUND_ROBIN takes the instances in turn.
+ * LEAST_CONNECTIONS takes the instance with the fewest requests in progress.
+ * POWER_OF_TWO_CHOICES picks two instances at random and takes the one with
+ * the fewest requests in progress. It is almost as good as LEAST_CONNECTIONS
+ * but does not need to look at every instance, and instances that were just
+ * freed are not all hit at once.
+ * 
+ * Passive health check with outlier ejection: there is no separate health
+ * probe, instead the outcome of the real requests is used. An instance that
+ * fails maxFailures requests in a row (connection error or a 5xx answer) is
+ * ejected: it gets no requests for a while. The ejection time doubles each time
+ * the same instance is ejected again, up to 32 times the base time, and resets
+ * once it answers well again. At most maxEjectedPercent of the instances are
+ * ejected at the same time, and when every instance is ejected they are used
+ * anyway, since an unhealthy service is better than none.
+ */
+class UpstreamPool {
+
+    enum Balancer {
+        ROUND_ROBIN, LEAST_CONNECTIONS, POWER_OF_TWO_CHOICES
+    }
+
+    private final String name;
+    private final List<Upstream> upstreams = new ArrayList<>();
+    private final Balancer balancer;
+    private final int maxFailures;
+    private final long baseEjectionNanos;
+    private final int maxEjectedPercent;
+    private final AtomicInteger next = new AtomicInteger();
+
+    UpstreamPool(String name, List<String> baseUrls, Balancer balancer, int maxFailures, long baseEjectionMillis,
+            int maxEjectedPercent) {
+        this.name = name;
+        for (String baseUrl : baseUrls) {
+            upstreams.add(new Upstream(baseUrl.trim()));
+        }
+        this.balancer = balancer;
+        this.maxFailures = maxFailures;
+        this.baseEjectionNanos = TimeUnit.MILLISECONDS.toNanos(baseEjectionMillis);
+        this.maxEjectedPercent = maxEjectedPercent;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    List<Upstream> getUpstreams() {
+        return upstreams;
+    }
+
+    List<String> getBaseUrls() {
+        List<String> baseUrls = new ArrayList<>();
+        for (Upstream upstream : upstreams) {
+            baseUrls.add(upstream.getBaseUrl());
+        }
+        return baseUrls;
+    }
+
+    Balancer getBalancer() {
+        return balancer;
+    }
+
+    /** Picks an instance for the next request. */
+    Upstream choose() {
+        return choose(null);
+    }
+
+    /** Picks an instance other than exclude, if there is one. */
+    Upstream choose(Upstream exclude) {
+        List<Upstream> candidates = available(exclude);
+        int size = candidates.size();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+        switch (balancer) {
+        case LEAST_CONNECTIONS: {
+            // Start at the round robin position so ties are spread over the instances.
+            int start = Math.floorMod(next.getAndIncrement(), size);
+            Upstream best = null;
+            for (int i = 0; i < size; i++) {
+                Upstream candidate = candidates.get((start + i) % size);
+                if (best == null || candidate.active.get() < best.active.get()) {
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+        case POWER_OF_TWO_CHOICES: {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            Upstream a = candidates.get(first);
+            Upstream b = candidates.get(second);
+            return a.active.get() <= b.active.get() ? a : b;
+        }
+        default:
+            return candidates.get(Math.floorMod(next.getAndIncrement(), size));
+        }
+    }
+
+    /** Whether there is an instance other than exclude that is not ejected. */
+    boolean hasAlternative(Upstream exclude) {
+        long now = System.nanoTime();
+        for (Upstream upstream : upstreams) {
+            if (upstream != exclude && !upstream.isEjected(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Upstream> available(Upstream exclude) {
+        long now = System.nanoTime();
+        List<Upstream> candidates = new ArrayList<>(upstreams.size());
+        for (Upstream upstream : upstreams) {
+            if (upstream != exclude && !upstream.isEjected(now)) {
+                candidates.add(upstream);
+            }
+        }
+        if (candidates.isEmpty()) {
+            for (Upstream upstream : upstreams) {
+                if (upstream != exclude) {
+                    candidates.add(upstream);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            // Only one instance and it is excluded: use it anyway.
+            candidates.add(exclude);
+        }
+        return candidates;
+    }
+
+    void onStart(Upstream upstream) {
+        upstream.active.incrementAndGet();
+        upstream.requests.increment();
+    }
+
+    void onSuccess(Upstream upstream) {
+        upstream.active.decrementAndGet();
+        upstream.consecutiveFailures.set(0);
+        if (!upstream.isEjected(System.nanoTime())) {
+            upstream.ejections = 0;
+        }
+    }
+
+    void onFailure(Upstream upstream) {
+        upstream.active.decrementAndGet();
+        upstream.failures.increment();
+        if (upstream.consecutiveFailures.incrementAndGet() >= maxFailures) {
+            eject(upstream);
+        }
+    }
+
+    private synchronized void eject(Upstream upstream) {
+        long now = System.nanoTime();
+        if (upstream.isEjected(now)) {
+            return;
+        }
+        int ejected = 0;
+        for (Upstream other : upstreams) {
+            if (other.isEjected(now)) {
+                ejected++;
+            }
+        }
+        if ((ejected + 1) * 100 > maxEjectedPercent * upstreams.size()) {
+            return;
+        }
+        int times = Math.min(upstream.ejections, 5);
+        upstream.ejectedUntil = now + (baseEjectionNanos << times);
+        upstream.ejections++;
+        upstream.consecutiveFailures.set(0);
+    }
+
+    Map<String, Object> metrics() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (Upstream upstream : upstreams) {
+            map.put(upstream.getBaseUrl(), upstream.metrics());
+        }
+        return map;
+    }
+}
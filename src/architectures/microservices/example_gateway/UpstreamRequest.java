@@ -0,0 +1,65 @@
+package architectures.microservices.example_gateway;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.StreamUtils;
+
+/**
+ * A request as it will be sent to a service: method, path (with the query
+ * string), headers and body. The instance it is sent to is only picked when it
+ * is sent. The buffered proxy, the cache and the retries all work on this one
+ * object instead of on the HttpServletRequest, which can only be read once.
+ */
+final class UpstreamRequest {
+    private final HttpMethod method;
+    private final String path;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    UpstreamRequest(HttpMethod method, String path, HttpHeaders headers, byte[] body) {
+        this.method = method;
+        this.path = path;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    static UpstreamRequest from(HttpServletRequest request, Route route, HeaderPipeline headerPipeline)
+            throws IOException {
+        HttpMethod method = HttpMethod.valueOf(request.getMethod());
+        String path = request.getRequestURI()
+                + (request.getQueryString() == null ? "" : "?" + request.getQueryString());
+
+        HttpHeaders headers = headerPipeline.requestHeaders(request, route);
+        byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+        return new UpstreamRequest(method, path, headers, body);
+    }
+
+    /** Returns a copy of this request with one header replaced. */
+    UpstreamRequest withHeader(String name, String value) {
+        HttpHeaders copy = new HttpHeaders();
+        copy.putAll(headers);
+        copy.set(name, value);
+        return new UpstreamRequest(method, path, copy, body);
+    }
+
+    HttpMethod getMethod() {
+        return method;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    HttpEntity<byte[]> toEntity() {
+        return new HttpEntity<>(body, headers);
+    }
+}
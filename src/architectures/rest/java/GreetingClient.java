@@ -1,8 +1,22 @@
-package architectures.rest.java.java;
+package architectures.rest.java;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
-import architectures.rest.server.Greeting;
+import architectures.rest.java.server.Greeting;
 
 /**
  * This client uses the RestTemplate class to send a GET request to the
@@ -10,6 +24,12 @@ import architectures.rest.server.Greeting;
  * the response JSON to a Greeting object using the getForObject method, and
  * prints the content of the greeting to the console.
  * 
+ * A GreetingClient is meant to be created once and reused: its RestTemplate
+ * sends the requests over a pool of keep-alive connections (Apache
+ * HttpClient), so only the first requests pay for opening a connection.
+ * getAll() fetches many greetings in parallel, with at most concurrency
+ * requests in flight at the same time.
+ * 
  *
  * Make sure to include the necessary dependencies in your pom.xml file for the
  * Spring Boot and Spring Web projects:
@@ -20,14 +40,66 @@ import architectures.rest.server.Greeting;
  * <groupId>org.springframework.boot</groupId>
  * <artifactId>spring-boot-starter-web</artifactId>
  * </dependency>
+ * <dependency>
+ * <groupId>org.apache.httpcomponents.client5</groupId>
+ * <artifactId>httpclient5</artifactId>
+ * </dependency>
  * </dependencies>
  * 
  */
 
-public class GreetingClient {
-    public static void main(String[] args) {
-        RestTemplate restTemplate = new RestTemplate();
-        Greeting greeting = restTemplate.getForObject("http://localhost:8080/greeting?name=John", Greeting.class);
-        System.out.println(greeting.getContent());
+public class GreetingClient implements AutoCloseable {
+    private final String baseUrl;
+    private final PoolingHttpClientConnectionManager connections;
+    private final CloseableHttpClient httpClient;
+    private final RestTemplate restTemplate;
+    private final ExecutorService executor;
+
+    public GreetingClient(String baseUrl, int concurrency) {
+        this.baseUrl = baseUrl;
+        this.connections = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(concurrency)
+                .setMaxConnPerRoute(concurrency)
+                .build();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connections)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofSeconds(5))
+                        .setResponseTimeout(Timeout.ofSeconds(10))
+                        .build())
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .build();
+        this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        this.executor = Executors.newFixedThreadPool(concurrency);
+    }
+
+    public Greeting get(String name) {
+        return restTemplate.getForObject(baseUrl + "/greeting?name={name}", Greeting.class, name);
+    }
+
+    public CompletableFuture<List<Greeting>> getAll(List<String> names) {
+        List<CompletableFuture<Greeting>> futures = names.stream()
+                .map(name -> CompletableFuture.supplyAsync(() -> get(name), executor))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(done -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    /** Connections in use, idle and waited for, as reported by the pool. */
+    public String poolStats() {
+        return connections.getTotalStats().toString();
+    }
+
+    @Override
+    public void close() throws Exception {
+        executor.shutdown();
+        httpClient.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (GreetingClient client = new GreetingClient("http://localhost:8080", 8)) {
+            Greeting greeting = client.get("John");
+            System.out.println(greeting.getContent());
+        }
     }
 }
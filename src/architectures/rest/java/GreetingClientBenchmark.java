@@ -0,0 +1,60 @@
+package architectures.rest.java;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.web.client.RestTemplate;
+
+import architectures.rest.java.server.Greeting;
+
+/**
+ * Measures how many greetings per second a client gets from a local
+ * GreetingApplication, first the old way (a new RestTemplate for every
+ * request, one request after the other) and then with a pooled GreetingClient
+ * and its parallel getAll().
+ * 
+ * Start the GreetingApplication first.
+ * 
+ * Usage: GreetingClientBenchmark [requests] [concurrency]
+ */
+public class GreetingClientBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        String baseUrl = "http://localhost:8080";
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            names.add("user" + (i % 1000));
+        }
+
+        long start = System.nanoTime();
+        for (String name : names) {
+            RestTemplate restTemplate = new RestTemplate();
+            restTemplate.getForObject(baseUrl + "/greeting?name={name}", Greeting.class, name);
+        }
+        report("new RestTemplate per request", requests, start);
+
+        try (GreetingClient client = new GreetingClient(baseUrl, concurrency)) {
+            // Warm up the connection pool and the JIT.
+            client.getAll(names.subList(0, Math.min(1000, requests))).join();
+
+            start = System.nanoTime();
+            for (String name : names) {
+                client.get(name);
+            }
+            report("pooled, sequential", requests, start);
+
+            start = System.nanoTime();
+            client.getAll(names).join();
+            report("pooled, getAll with concurrency " + concurrency, requests, start);
+            System.out.println("pool: " + client.poolStats());
+        }
+    }
+
+    private static void report(String label, int requests, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-40s %8.0f greetings/s%n", label, requests / seconds);
+    }
+}
@@ -0,0 +1,90 @@
+package architectures.rest.java;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A simple closed-loop load test for the /greeting endpoint: a number of
+ * workers each send one request after the other for a fixed time. At the end
+ * it prints the throughput and the latency percentiles.
+ * 
+ * Usage: GreetingLoadTest [url] [workers] [seconds] [warmup seconds]
+ * 
+ * Use loadtest.sh to run it against all three serving modes of the
+ * GreetingApplication.
+ */
+public class GreetingLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "http://localhost:8080/greeting?name=John";
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int warmup = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newFixedThreadPool(workers)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).GET().build();
+
+        run(client, request, workers, warmup);
+        long[] latencies = run(client, request, workers, seconds);
+
+        Arrays.sort(latencies);
+        System.out.printf("%s workers=%d duration=%ds%n", url, workers, seconds);
+        System.out.printf("requests=%d throughput=%.0f req/s%n", latencies.length,
+                latencies.length / (double) seconds);
+        System.out.printf("p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms%n",
+                percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                percentile(latencies, 99.9), percentile(latencies, 100));
+        System.exit(0);
+    }
+
+    private static long[] run(HttpClient client, HttpRequest request, int workers, int seconds) throws Exception {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<long[]>> results = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            results.add(pool.submit(() -> {
+                long[] samples = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("Unexpected status " + response.statusCode());
+                    }
+                    if (count == samples.length) {
+                        samples = Arrays.copyOf(samples, count * 2);
+                    }
+                    samples[count++] = System.nanoTime() - start;
+                }
+                return Arrays.copyOf(samples, count);
+            }));
+        }
+        long[] all = new long[0];
+        for (Future<long[]> result : results) {
+            long[] samples = result.get();
+            int offset = all.length;
+            all = Arrays.copyOf(all, offset + samples.length);
+            System.arraycopy(samples, 0, all, offset, samples.length);
+        }
+        pool.shutdown();
+        return all;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,21 @@
+#!/bin/sh
+# Runs GreetingLoadTest against the greeting service in each serving mode:
+# the default servlet stack, Tomcat with virtual threads and WebFlux.
+#
+# Build the project first (see README.md), then run from the project directory:
+#   ./loadtest.sh [workers] [seconds]
+
+WORKERS=${1:-64}
+SECONDS_PER_RUN=${2:-20}
+JAR=$(ls target/*.jar | head -n 1)
+
+for MODE in default virtual-threads webflux; do
+    echo "=== $MODE"
+    java -jar "$JAR" --spring.profiles.active=$MODE > "target/$MODE.log" 2>&1 &
+    SERVER=$!
+    until curl -s http://localhost:8080/greeting > /dev/null; do sleep 1; done
+    java -cp target/classes architectures.rest.java.GreetingLoadTest \
+        "http://localhost:8080/greeting?name=John" "$WORKERS" "$SECONDS_PER_RUN"
+    kill $SERVER
+    wait $SERVER 2> /dev/null
+done
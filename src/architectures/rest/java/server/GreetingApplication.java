@@ -1,13 +1,36 @@
 package architectures.rest.java.server;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.core.env.Profiles;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
 
+/**
+ * Run with --spring.profiles.active=virtual-threads or
+ * --spring.profiles.active=webflux to change the serving mode, see
+ * ServingModeConfiguration.
+ */
 @SpringBootApplication
 public class GreetingApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(GreetingApplication.class, args);
+        SpringApplication application = new SpringApplication(GreetingApplication.class);
+        if (hasProfile(args, ServingModeConfiguration.WEBFLUX)) {
+            // With both starters on the classpath Spring Boot picks the servlet stack by default.
+            application.setWebApplicationType(WebApplicationType.REACTIVE);
+        }
+        application.run(args);
+    }
+
+    // The application is not running yet, so its profiles are read the way it
+    // will read them: from the arguments, system properties and environment
+    // variables (SPRING_PROFILES_ACTIVE).
+    private static boolean hasProfile(String[] args, String profile) {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        return environment.acceptsProfiles(Profiles.of(profile));
     }
 
 }
@@ -0,0 +1,97 @@
+package architectures.rest.java.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of rendered greetings, keyed by name. When it is full the
+ * least recently used name is evicted. A size of 0 disables the cache.
+ * 
+ * The cache is split into segments by the hash of the name, each with its own
+ * lock and its own share of maxEntries, so request threads only wait for each
+ * other when their names fall into the same segment. Eviction is done per
+ * segment.
+ * 
+ * Only the content is cached: every request still gets a new Greeting with its
+ * own id.
+ */
+public class GreetingCache {
+
+    /** One part of the cache, guarded by its own lock. */
+    private static final class Segment extends LinkedHashMap<String, String> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final int maxEntries;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public GreetingCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        // A power of two, but no more segments than entries, so that the
+        // shares add up to exactly maxEntries.
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxEntries)));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxEntries / count + (i < maxEntries % count ? 1 : 0));
+        }
+    }
+
+    public String get(String name, Function<String, String> render) {
+        if (maxEntries <= 0) {
+            return render.apply(name);
+        }
+        Segment segment = segment(name);
+        String content;
+        synchronized (segment) {
+            content = segment.get(name);
+        }
+        if (content != null) {
+            hits.increment();
+            return content;
+        }
+        misses.increment();
+        // Rendered outside the lock: two threads may render the same name, which is harmless.
+        content = render.apply(name);
+        synchronized (segment) {
+            segment.put(name, content);
+        }
+        return content;
+    }
+
+    private Segment segment(String name) {
+        int h = name.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    public Map<String, Object> metrics() {
+        long h = hits.sum();
+        long m = misses.sum();
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return Map.of("maxEntries", maxEntries, "size", size, "hits", h, "misses", m,
+                "hitRate", h + m == 0 ? 0.0 : (double) h / (h + m));
+    }
+}
@@ -1,6 +1,6 @@
 package architectures.rest.java.server;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Map;
 
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -12,6 +12,9 @@ import org.springframework.web.bind.annotation.RestController;
  * the /greeting endpoint. It takes a query parameter called name and returns a
  * Greeting object with a unique id and a formatted content string.
  * 
+ * The greetings are created by the GreetingService. The metrics of its cache
+ * are served at /greeting/metrics.
+ * 
  *
  * Make sure to include the necessary dependencies in your pom.xml file for the
  * Spring Boot and Spring Web projects:
@@ -29,12 +32,20 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 public class GreetingController {
 
-    private static final String template = "Hello, %s!";
-    private final AtomicLong counter = new AtomicLong();
+    private final GreetingService service;
+
+    public GreetingController(GreetingService service) {
+        this.service = service;
+    }
 
     @GetMapping("/greeting")
     public Greeting greeting(@RequestParam(value = "name", defaultValue = "World") String name) {
-        return new Greeting(counter.incrementAndGet(), String.format(template, name));
+        return service.greet(name);
+    }
+
+    @GetMapping("/greeting/metrics")
+    public Map<String, Object> metrics() {
+        return service.metrics();
     }
 
 }
@@ -0,0 +1,35 @@
+package architectures.rest.java.server;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Creates the greetings for all endpoints, so they share the ids and the
+ * cache. The ids come from an IdAllocator, so they are unique but only roughly
+ * increasing.
+ * 
+ * The template is parsed once into a GreetingTemplate, and rendered greetings
+ * can be cached per name by setting the property greeting.cache.size (0, the
+ * default, disables the cache).
+ */
+@Service
+public class GreetingService {
+
+    private static final GreetingTemplate template = new GreetingTemplate("Hello, %s!");
+    private final IdAllocator ids = new IdAllocator();
+    private final GreetingCache cache;
+
+    public GreetingService(@Value("${greeting.cache.size:0}") int cacheSize) {
+        this.cache = new GreetingCache(cacheSize);
+    }
+
+    public Greeting greet(String name) {
+        return new Greeting(ids.nextId(), cache.get(name, template::render));
+    }
+
+    public Map<String, Object> metrics() {
+        return cache.metrics();
+    }
+}
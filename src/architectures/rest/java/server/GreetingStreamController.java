@@ -0,0 +1,168 @@
+package architectures.rest.java.server;
+
+import java.io.IOException;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Endpoints that greet many names in one request. Both take a JSON array of
+ * names as request body, for example ["John", "Jane"].
+ * 
+ * POST /greetings returns a JSON array of greetings.
+ * 
+ * POST /greetings/stream returns one greeting per line (NDJSON) and flushes
+ * them to the client while the request is still being read.
+ * 
+ * Neither endpoint builds a list of names or greetings: the names are read
+ * one at a time with a streaming JsonParser and every greeting is written
+ * directly to the response with a JsonGenerator, so memory use does not depend
+ * on the number of names. They use the servlet streams, so they are only
+ * available on the servlet stack, not in the webflux mode.
+ * 
+ * Every element of the array must be a string. Nothing is written before the
+ * first name has been read, and an invalid element is answered with 400 Bad
+ * Request as long as the response has not been sent yet. When part of it was
+ * already sent, the array of /greetings is left unclosed and /greetings/stream
+ * ends with an {"error": ...} line, so the client cannot take the partial
+ * response for a complete one.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class GreetingStreamController {
+
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int FLUSH_EVERY = 64;
+
+    private final GreetingService service;
+    private final JsonFactory jsonFactory;
+
+    public GreetingStreamController(GreetingService service, ObjectMapper objectMapper) {
+        this.service = service;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    @PostMapping(value = "/greetings", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void bulk(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (JsonParser names = openNames(request)) {
+            String name = nextName(names);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            try (JsonGenerator out = createGenerator(response)) {
+                out.writeStartArray();
+                try {
+                    for (; name != null; name = nextName(names)) {
+                        write(out, service.greet(name));
+                    }
+                } catch (ResponseStatusException e) {
+                    discardIfNotSent(out, response);
+                    throw e;
+                }
+                out.writeEndArray();
+            }
+        }
+    }
+
+    @PostMapping(value = "/greetings/stream", consumes = MediaType.APPLICATION_JSON_VALUE, produces = NDJSON)
+    public void stream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (JsonParser names = openNames(request)) {
+            String name = nextName(names);
+            response.setContentType(NDJSON);
+            try (JsonGenerator out = createGenerator(response)) {
+                // Root values are separated by a newline instead of the default space.
+                out.setRootValueSeparator(new SerializedString("\n"));
+                int written = 0;
+                try {
+                    for (; name != null; name = nextName(names)) {
+                        write(out, service.greet(name));
+                        if (++written % FLUSH_EVERY == 0) {
+                            out.flush();
+                            response.flushBuffer();
+                        }
+                    }
+                } catch (ResponseStatusException e) {
+                    if (!discardIfNotSent(out, response)) {
+                        out.writeStartObject();
+                        out.writeStringField("error", e.getReason());
+                        out.writeEndObject();
+                        out.writeRaw('\n');
+                        out.flush();
+                        response.flushBuffer();
+                    }
+                    throw e;
+                }
+                out.writeRaw('\n');
+            }
+        }
+    }
+
+    private JsonGenerator createGenerator(HttpServletResponse response) throws IOException {
+        JsonGenerator out = jsonFactory.createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+        // An array that was cut short must stay unclosed. Flushing or closing
+        // the generator must not send the response either, so it can still be
+        // replaced by an error; the container sends and closes it.
+        out.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        out.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        out.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return out;
+    }
+
+    /**
+     * Returns the next name, or null at the end of the array. Anything else
+     * than a string is a 400 Bad Request.
+     */
+    private static String nextName(JsonParser names) throws IOException {
+        JsonToken token = names.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+            return null;
+        }
+        if (token != JsonToken.VALUE_STRING) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Expected a JSON array of names, found "
+                    + (token == null ? "the end of the input" : token.asString() != null ? token.asString() : token));
+        }
+        return names.getText();
+    }
+
+    /**
+     * Throws away what was written so far, so the error can still be sent,
+     * and returns true; returns false if part of the response was sent.
+     */
+    private static boolean discardIfNotSent(JsonGenerator out, HttpServletResponse response) throws IOException {
+        out.flush();
+        if (response.isCommitted()) {
+            return false;
+        }
+        response.resetBuffer();
+        return true;
+    }
+
+    private JsonParser openNames(HttpServletRequest request) throws IOException {
+        JsonParser parser = jsonFactory.createParser(request.getInputStream());
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Expected a JSON array of names");
+        }
+        return parser;
+    }
+
+    private static void write(JsonGenerator out, Greeting greeting) throws IOException {
+        out.writeStartObject();
+        out.writeNumberField("id", greeting.getId());
+        out.writeStringField("content", greeting.getContent());
+        out.writeEndObject();
+    }
+}
@@ -0,0 +1,35 @@
+package architectures.rest.java.server;
+
+/**
+ * A template such as "Hello, %s!" that is parsed once, when it is created.
+ * 
+ * String.format parses its format string on every call. This class splits the
+ * template into the text before and after the placeholder up front, so
+ * rendering is only a concatenation.
+ */
+public class GreetingTemplate {
+    private final String prefix;
+    private final String suffix;
+
+    public GreetingTemplate(String template) {
+        int placeholder = template.indexOf("%s");
+        if (placeholder < 0 || template.indexOf("%s", placeholder + 2) >= 0) {
+            throw new IllegalArgumentException("Template needs exactly one %s: " + template);
+        }
+        this.prefix = unescape(template.substring(0, placeholder));
+        this.suffix = unescape(template.substring(placeholder + 2));
+    }
+
+    private static String unescape(String text) {
+        String unescaped = text.replace("%%", "");
+        if (unescaped.indexOf('%') >= 0) {
+            throw new IllegalArgumentException("Only %s and %% are supported: " + text);
+        }
+        return text.replace("%%", "%");
+    }
+
+    public String render(String name) {
+        return new StringBuilder(prefix.length() + name.length() + suffix.length())
+                .append(prefix).append(name).append(suffix).toString();
+    }
+}
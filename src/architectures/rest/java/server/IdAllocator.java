@@ -0,0 +1,92 @@
+package architectures.rest.java.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hands out unique ids without making every thread update the same counter.
+ * 
+ * With a single AtomicLong every request on every core writes to the same
+ * cache line, which has to move between the cores all the time. Here the ids
+ * come from a number of stripes. Each stripe owns a block of ids that it hands
+ * out one by one; only when its block is used up does it take the next block
+ * from the shared counter. A thread always uses the same stripe (picked from
+ * its thread id), so threads mostly work on their own stripe.
+ * 
+ * The ids are unique and roughly increasing, but not gap-free: an id is never
+ * more than stripes * blockSize below the end of the newest block. A stripe
+ * that is rarely used and falls further behind drops the rest of its block
+ * and takes a new one. Checking this only reads the shared counter, which
+ * changes once per block, so its cache line stays shared between the cores.
+ * 
+ * The stripes are not tied to threads (no ThreadLocal), so this also works
+ * well with virtual threads, where every request has a new thread.
+ */
+public class IdAllocator {
+
+    /** A range of ids [next, end) that belongs to one stripe. */
+    private static final class Block {
+        final AtomicLong next;
+        final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+
+    private final AtomicLong blocks = new AtomicLong();
+    private final AtomicReferenceArray<Block> stripes;
+    private final int blockSize;
+    private final long maxLag;
+
+    public IdAllocator() {
+        this(Runtime.getRuntime().availableProcessors() * 2, 1024);
+    }
+
+    public IdAllocator(int stripeCount, int blockSize) {
+        if (stripeCount <= 0 || blockSize <= 0) {
+            throw new IllegalArgumentException("stripeCount and blockSize must be positive");
+        }
+        // A power of two, so the stripe can be picked with a mask.
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; i++) {
+            // Empty blocks, the first call on each stripe takes a real one.
+            stripes.set(i, new Block(0, 0));
+        }
+        this.blockSize = blockSize;
+        this.maxLag = (long) size * blockSize;
+    }
+
+    /** Returns the next id, starting at 1 like AtomicLong.incrementAndGet(). */
+    public long nextId() {
+        int index = stripeIndex();
+        while (true) {
+            Block block = stripes.get(index);
+            long id = block.next.getAndIncrement();
+            if (id < block.end && blocks.get() - id < maxLag) {
+                return id;
+            }
+            // The block is used up or too far behind. Only one thread replaces
+            // it, the others wait for that and retry on the new block. This is
+            // the only place where the shared counter is written, once per
+            // blockSize ids.
+            synchronized (block) {
+                if (stripes.get(index) == block) {
+                    long start = blocks.getAndAdd(blockSize) + 1;
+                    stripes.set(index, new Block(start, start + blockSize));
+                }
+            }
+        }
+    }
+
+    private int stripeIndex() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32));
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h & (stripes.length() - 1);
+    }
+}
@@ -0,0 +1,73 @@
+package architectures.rest.java.server;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Compares a shared AtomicLong with the IdAllocator: every thread takes ids as
+ * fast as it can for a while, and the total number of ids per second is
+ * printed for each thread count.
+ * 
+ * Run it on a machine with many cores: with one or two cores there is hardly
+ * any contention and the plain AtomicLong is faster.
+ * 
+ * Usage: IdAllocatorBenchmark [max threads] [milliseconds per run]
+ */
+public class IdAllocatorBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            // The first round is a warm-up.
+            for (int round = 0; round < 2; round++) {
+                AtomicLong counter = new AtomicLong();
+                double atomic = run(threads, millis, counter::incrementAndGet);
+                IdAllocator allocator = new IdAllocator();
+                double striped = run(threads, millis, allocator::nextId);
+                if (round == 1) {
+                    System.out.printf("threads=%-3d AtomicLong=%8.1f M ids/s  IdAllocator=%8.1f M ids/s%n", threads,
+                            atomic / 1e6, striped / 1e6);
+                }
+            }
+        }
+    }
+
+    private static double run(int threads, long millis, LongSupplier ids) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        long[] counts = new long[threads];
+        long[] sinks = new long[threads];
+        Thread[] workers = new Thread[threads];
+        long deadline = System.nanoTime() + millis * 1_000_000 + 50_000_000;
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            workers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0;
+                long sink = 0;
+                while ((count & 1023) != 0 || System.nanoTime() < deadline) {
+                    sink += ids.getAsLong();
+                    count++;
+                }
+                counts[index] = count;
+                sinks[index] = sink;
+            });
+            workers[i].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        long total = 0;
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+            total += counts[i];
+        }
+        return total / ((System.nanoTime() - begin) / 1e9);
+    }
+}
@@ -0,0 +1,46 @@
+package architectures.rest.java.server;
+
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * The greeting service can be served in three modes, selected with
+ * --spring.profiles.active:
+ * 
+ * (no profile) the default blocking servlet stack: Tomcat with a pool of
+ * platform threads, one thread per request.
+ * 
+ * virtual-threads: still Tomcat and blocking code, but every request runs on
+ * its own virtual thread, so a blocked request does not hold on to an OS
+ * thread. Needs Java 21.
+ * 
+ * webflux: WebFlux on Netty, a few event loop threads serve all requests. The
+ * same GreetingController is used, WebFlux also supports annotated
+ * controllers. GreetingApplication switches the application type for this
+ * profile, and nettyServer makes it run on Netty: with spring-boot-starter-web
+ * on the classpath Spring Boot would otherwise serve WebFlux with Tomcat. The
+ * /greetings endpoints use the servlet API, so they are not available here.
+ */
+@Configuration
+public class ServingModeConfiguration {
+
+    public static final String VIRTUAL_THREADS = "virtual-threads";
+    public static final String WEBFLUX = "webflux";
+
+    @Bean
+    @Profile(VIRTUAL_THREADS)
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadExecutor() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean
+    @Profile(WEBFLUX)
+    public NettyReactiveWebServerFactory nettyServer() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -4,7 +4,9 @@ import java.rmi.Remote;
 import java.rmi.RemoteException;
 
 public interface Calculator extends Remote {
+    @Idempotent
     public int add(int x, int y) throws RemoteException;
 
+    @Idempotent
     public int subtract(int x, int y) throws RemoteException;
 }
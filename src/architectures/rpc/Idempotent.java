@@ -0,0 +1,18 @@
+package architectures.rpc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a remote method that can be called twice with the same effect as
+ * once. The client LoadBalancer retries only such methods on another server
+ * when a call fails, since a failed call may have been executed already.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Idempotent {
+}
@@ -1,18 +1,38 @@
 package architectures.rpc.client;
 
 import java.rmi.Naming;
+import java.util.ArrayList;
+import java.util.List;
 
 import architectures.rpc.Calculator;
 
 /**
  * This class looks up the CalculatorService on the server and calls the add and
  * subtract methods remotely.
+ * 
+ * When the server was started with N instances, run the client with the same
+ * argument N to spread the calls over all of them with a LoadBalancer.
  */
 
 public class Client {
+    // The same as in Server, which the client does not depend on.
+    private static final int BASE_PORT = 1099;
+    private static final String NAME = "CalculatorService";
+
     public static void main(String[] args) {
         try {
-            Calculator c = (Calculator) Naming.lookup("rmi://localhost:1099/CalculatorService");
+            int instances = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+            Calculator c;
+            if (instances == 1) {
+                c = (Calculator) Naming.lookup(url(BASE_PORT));
+            } else {
+                List<String> urls = new ArrayList<>();
+                for (int i = 0; i < instances; i++) {
+                    urls.add(url(BASE_PORT + i));
+                }
+                c = LoadBalancer.create(Calculator.class, urls, LoadBalancer.Strategy.ROUND_ROBIN,
+                        stub -> stub.add(0, 0), 1000);
+            }
             int result = c.add(3, 4);
             System.out.println("3 + 4 = " + result);
             result = c.subtract(7, 2);
@@ -21,4 +41,8 @@ public class Client {
             e.printStackTrace();
         }
     }
+
+    private static String url(int port) {
+        return "rmi://localhost:" + port + "/" + NAME;
+    }
 }
@@ -0,0 +1,211 @@
+package architectures.rpc.client;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.Naming;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import architectures.rpc.Idempotent;
+
+/**
+ * Client-side load balancing over several servers that export the same remote
+ * interface.
+ * 
+ * create() returns a proxy implementing the remote interface. Every call is
+ * sent to one of the healthy endpoints, picked by the Strategy. When a call
+ * fails with a RemoteException the endpoint is marked unhealthy and, if the
+ * method is annotated with @Idempotent, the call is retried on the next endpoint
+ * (failover). Other methods are not retried, because a call that failed half
+ * way may have been executed already. A background thread looks up every
+ * endpoint again at a fixed interval and runs the HealthCheck on it, so
+ * endpoints that come back are used again.
+ */
+public class LoadBalancer<T extends Remote> implements InvocationHandler {
+
+    public enum Strategy {
+        ROUND_ROBIN, LEAST_OUTSTANDING
+    }
+
+    /** Probes a stub, for example by calling a cheap method on it. */
+    @FunctionalInterface
+    public interface HealthCheck<T> {
+        void check(T stub) throws RemoteException;
+    }
+
+    public static class Endpoint<T> {
+        private final String url;
+        private volatile T stub;
+        private volatile boolean healthy;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        Endpoint(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        @Override
+        public String toString() {
+            return url + (healthy ? " UP" : " DOWN") + " calls=" + getCalls() + " failures=" + getFailures();
+        }
+    }
+
+    private final List<Endpoint<T>> endpoints = new ArrayList<>();
+    private final Strategy strategy;
+    private final HealthCheck<T> healthCheck;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService checker;
+
+    private LoadBalancer(List<String> urls, Strategy strategy, HealthCheck<T> healthCheck, long checkIntervalMillis) {
+        for (String url : urls) {
+            endpoints.add(new Endpoint<>(url));
+        }
+        this.strategy = strategy;
+        this.healthCheck = healthCheck;
+        checkAll();
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rpc-health-check");
+            t.setDaemon(true);
+            return t;
+        });
+        checker.scheduleWithFixedDelay(this::checkAll, checkIntervalMillis, checkIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends Remote> T create(Class<T> remoteInterface, List<String> urls, Strategy strategy,
+            HealthCheck<T> healthCheck, long checkIntervalMillis) {
+        return (T) Proxy.newProxyInstance(remoteInterface.getClassLoader(), new Class<?>[] { remoteInterface },
+                new LoadBalancer<T>(urls, strategy, healthCheck, checkIntervalMillis));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends Remote> LoadBalancer<T> of(T proxy) {
+        return (LoadBalancer<T>) Proxy.getInvocationHandler(proxy);
+    }
+
+    public List<Endpoint<T>> getEndpoints() {
+        return endpoints;
+    }
+
+    public void shutdown() {
+        checker.shutdownNow();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, args);
+        }
+
+        boolean failover = method.isAnnotationPresent(Idempotent.class);
+        List<Endpoint<T>> tried = new ArrayList<>();
+        RemoteException last = null;
+        Endpoint<T> endpoint;
+        while ((endpoint = choose(tried)) != null) {
+            tried.add(endpoint);
+            endpoint.outstanding.incrementAndGet();
+            endpoint.calls.increment();
+            try {
+                return method.invoke(endpoint.stub, args);
+            } catch (InvocationTargetException e) {
+                if (!(e.getCause() instanceof RemoteException)) {
+                    // The server answered with an application exception, no reason to fail over.
+                    throw e.getCause();
+                }
+                last = (RemoteException) e.getCause();
+                endpoint.failures.increment();
+                endpoint.healthy = false;
+                if (!failover) {
+                    throw last;
+                }
+            } finally {
+                endpoint.outstanding.decrementAndGet();
+            }
+        }
+        throw last != null ? last : new RemoteException("No healthy endpoint available");
+    }
+
+    // A proxy is only equal to itself, like the stubs it balances over.
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "LoadBalancer" + endpoints;
+        }
+    }
+
+    private Endpoint<T> choose(List<Endpoint<T>> exclude) {
+        List<Endpoint<T>> candidates = new ArrayList<>(endpoints.size());
+        for (Endpoint<T> endpoint : endpoints) {
+            if (endpoint.healthy && !exclude.contains(endpoint)) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), candidates.size());
+        if (strategy == Strategy.ROUND_ROBIN) {
+            return candidates.get(start);
+        }
+        // Start at the round robin position so ties are spread over the endpoints.
+        Endpoint<T> best = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            Endpoint<T> candidate = candidates.get((start + i) % candidates.size());
+            if (best == null || candidate.outstanding.get() < best.outstanding.get()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void checkAll() {
+        for (Endpoint<T> endpoint : endpoints) {
+            try {
+                T stub = (T) Naming.lookup(endpoint.url);
+                if (healthCheck != null) {
+                    healthCheck.check(stub);
+                }
+                endpoint.stub = stub;
+                endpoint.healthy = true;
+            } catch (Exception e) {
+                endpoint.healthy = false;
+            }
+        }
+    }
+}
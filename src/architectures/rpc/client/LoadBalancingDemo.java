@@ -0,0 +1,69 @@
+package architectures.rpc.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import architectures.rpc.Calculator;
+import architectures.rpc.server.Server;
+
+/**
+ * Starts three calculator servers in this JVM, each on its own port, and sends
+ * calls to them through a LoadBalancer. Once the first half of the calls has
+ * been answered, so every server has served some of them, one of the servers
+ * is stopped to show the failover. Pass LEAST_OUTSTANDING as argument to use
+ * that strategy instead of round robin.
+ */
+public class LoadBalancingDemo {
+    public static void main(String[] args) throws Exception {
+        LoadBalancer.Strategy strategy = args.length > 0 ? LoadBalancer.Strategy.valueOf(args[0])
+                : LoadBalancer.Strategy.ROUND_ROBIN;
+
+        List<Server> servers = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Server server = new Server(Server.BASE_PORT + i);
+            server.start();
+            servers.add(server);
+            urls.add(Server.url(server.getPort()));
+        }
+
+        Calculator calculator = LoadBalancer.create(Calculator.class, urls, strategy, c -> c.add(0, 0), 500);
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        sendCalls(clients, calculator, 0, 1000);
+        LoadBalancer.of(calculator).getEndpoints().forEach(System.out::println);
+
+        System.out.println("Stopping server on port " + servers.get(1).getPort());
+        servers.get(1).stop();
+        sendCalls(clients, calculator, 1000, 2000);
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+
+        LoadBalancer.of(calculator).getEndpoints().forEach(System.out::println);
+        System.exit(0);
+    }
+
+    // Sends the calls from the client threads and waits until all are answered.
+    private static void sendCalls(ExecutorService clients, Calculator calculator, int from, int to)
+            throws InterruptedException, ExecutionException {
+        List<Future<?>> calls = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            int x = i;
+            calls.add(clients.submit(() -> {
+                try {
+                    calculator.add(x, 1);
+                } catch (Exception e) {
+                    System.out.println("Call failed: " + e);
+                }
+            }));
+        }
+        for (Future<?> call : calls) {
+            call.get();
+        }
+    }
+}
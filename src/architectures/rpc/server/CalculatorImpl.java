@@ -5,19 +5,45 @@ import java.rmi.server.UnicastRemoteObject;
 
 import architectures.rpc.Calculator;
 
+/**
+ * The remote calculator. Each call is timed and recorded in CallMetrics, and
+ * only a sample of the calls is logged (asynchronously) by the CallLogger, so
+ * the console is kept out of the hot path.
+ */
 public class CalculatorImpl extends UnicastRemoteObject implements Calculator {
+    private final CallMetrics metrics = new CallMetrics();
+    private final CallLogger logger;
 
     public CalculatorImpl() throws RemoteException {
+        this(CallLogger.fromSystemProperties());
+    }
+
+    public CalculatorImpl(CallLogger logger) throws RemoteException {
         super();
+        this.logger = logger;
     }
 
     public int add(int x, int y) throws RemoteException {
-        System.out.println("Let me add those for you!");
-        return x + y;
+        long start = System.nanoTime();
+        int result = x + y;
+        record("add", start);
+        return result;
     }
 
     public int subtract(int x, int y) throws RemoteException {
-        System.out.println("Let me subtract those for you!");
-        return x - y;
+        long start = System.nanoTime();
+        int result = x - y;
+        record("subtract", start);
+        return result;
+    }
+
+    public CallMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void record(String method, long start) {
+        long nanos = System.nanoTime() - start;
+        metrics.record(method, nanos);
+        logger.log(method, nanos);
     }
 }
@@ -0,0 +1,68 @@
+package architectures.rpc.server;
+
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous, sampled call logger.
+ * 
+ * Calling System.out.println from every RMI worker thread makes all of them
+ * queue up on the lock of the console stream. Instead, on average only one out
+ * of every sampleEvery calls is logged, and the message is handed to a bounded queue
+ * that a single background thread writes to the console. When the queue is
+ * full the message is dropped (and counted) rather than blocking the caller.
+ * 
+ * Configure it with system properties:
+ * -Drpc.log.sample=N (log 1 out of N calls, 0 disables logging, default 1000)
+ * -Drpc.log.queue=N (maximum number of pending messages, default 1024)
+ */
+public class CallLogger {
+    private final int sampleEvery;
+    private final BlockingQueue<String> queue;
+    private final LongAdder dropped = new LongAdder();
+
+    public CallLogger(int sampleEvery, int queueCapacity, PrintStream out) {
+        this.sampleEvery = sampleEvery;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        if (sampleEvery > 0) {
+            Thread writer = new Thread(() -> drain(out), "rpc-call-logger");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    public static CallLogger fromSystemProperties() {
+        return new CallLogger(Integer.getInteger("rpc.log.sample", 1000),
+                Integer.getInteger("rpc.log.queue", 1024), System.out);
+    }
+
+    public void log(String method, long nanos) {
+        if (sampleEvery <= 0) {
+            return;
+        }
+        // Random sampling needs no shared counter between the worker threads.
+        if (ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+            return;
+        }
+        if (!queue.offer(method + " took " + nanos + "ns")) {
+            dropped.increment();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    private void drain(PrintStream out) {
+        try {
+            while (true) {
+                out.println(queue.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package architectures.rpc.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-method call counters and latency timers for a remote object.
+ * 
+ * Every RMI worker thread records into the same instance, so the counters use
+ * LongAdder/LongAccumulator: each thread updates its own cell and the cells
+ * are only summed when somebody asks for the numbers. Recording a call never
+ * takes a lock.
+ */
+public class CallMetrics {
+
+    public static class MethodStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            calls.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public double getMeanNanos() {
+            long n = getCalls();
+            return n == 0 ? 0 : (double) getTotalNanos() / n;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("calls=%d mean=%.0fns max=%dns", getCalls(), getMeanNanos(), getMaxNanos());
+        }
+    }
+
+    private final Map<String, MethodStats> stats = new ConcurrentHashMap<>();
+
+    public void record(String method, long nanos) {
+        stats.computeIfAbsent(method, k -> new MethodStats()).record(nanos);
+    }
+
+    public MethodStats get(String method) {
+        return stats.computeIfAbsent(method, k -> new MethodStats());
+    }
+
+    public Map<String, MethodStats> snapshot() {
+        return new TreeMap<>(stats);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        snapshot().forEach((method, s) -> sb.append(method).append(": ").append(s).append('\n'));
+        return sb.toString();
+    }
+}
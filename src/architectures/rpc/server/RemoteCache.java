@@ -0,0 +1,232 @@
+package architectures.rpc.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.Remote;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A caching decorator that works for any remote interface.
+ * 
+ * wrap() returns a dynamic proxy that implements the same remote interface as
+ * the target. A call is identified by the method and its arguments. Results are
+ * kept in a bounded cache, and when several threads make the same call while it
+ * is still being computed, only the first one calls the target: the others wait
+ * for its result (in-flight deduplication). Exceptions are passed on to every
+ * waiting caller but are never cached.
+ * 
+ * Only use it for methods whose result depends on nothing but their arguments.
+ * Array arguments are compared by their contents.
+ * 
+ * The cache is split into segments, each with its own lock and its own share of
+ * maxEntries, so concurrent calls only contend when their keys fall into the
+ * same segment. Eviction (LRU or FIFO) is done per segment.
+ * 
+ * Example:
+ * Calculator cached = RemoteCache.wrap(Calculator.class, new CalculatorImpl(),
+ * 10_000, Eviction.LRU);
+ * UnicastRemoteObject.exportObject(cached, 0);
+ */
+public class RemoteCache implements InvocationHandler {
+
+    public enum Eviction {
+        /** Evict the entry that was used least recently. */
+        LRU,
+        /** Evict the entry that was added first. */
+        FIFO
+    }
+
+    /** A method and its arguments, with arrays compared by content. */
+    private static final class CallKey {
+        final Method method;
+        final Object[] args;
+        final int hash;
+
+        CallKey(Method method, Object[] args) {
+            this.method = method;
+            this.args = args;
+            this.hash = 31 * method.hashCode() + Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof CallKey)) {
+                return false;
+            }
+            CallKey key = (CallKey) other;
+            return hash == key.hash && method.equals(key.method) && Arrays.deepEquals(args, key.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** Part of the cache, guarded by itself. */
+    private static final class Segment extends LinkedHashMap<CallKey, Object> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        Segment(int maxEntries, boolean accessOrder) {
+            super(16, 0.75f, accessOrder);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CallKey, Object> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Object target;
+    private final Segment[] segments;
+    private final Map<CallKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+
+    private RemoteCache(Object target, int maxEntries, Eviction eviction) {
+        this.target = target;
+        // A power of two, but no more segments than entries, so that the
+        // shares add up to exactly maxEntries.
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxEntries)));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxEntries / count + (i < maxEntries % count ? 1 : 0),
+                    eviction == Eviction.LRU);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends Remote> T wrap(Class<T> remoteInterface, T target, int maxEntries, Eviction eviction) {
+        return (T) Proxy.newProxyInstance(remoteInterface.getClassLoader(), new Class<?>[] { remoteInterface },
+                new RemoteCache(target, maxEntries, eviction));
+    }
+
+    /**
+     * Returns the RemoteCache behind a proxy created by wrap(), to read its
+     * metrics.
+     */
+    public static RemoteCache of(Object proxy) {
+        return (RemoteCache) Proxy.getInvocationHandler(proxy);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            // A proxy is only equal to itself, like any remote object.
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return invokeTarget(method, args);
+            }
+        }
+
+        CallKey key = new CallKey(method, args == null ? new Object[0] : args);
+        Segment segment = segment(key);
+        Object cached;
+        synchronized (segment) {
+            cached = segment.get(key);
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            deduplicated.increment();
+            return await(running);
+        }
+
+        misses.increment();
+        try {
+            Object result = invokeTarget(method, args);
+            if (result != null) {
+                synchronized (segment) {
+                    segment.put(key, result);
+                }
+            }
+            mine.complete(result);
+            return result;
+        } catch (Throwable t) {
+            mine.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private Segment segment(CallKey key) {
+        int h = key.hash ^ (key.hash >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> future) throws Throwable {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getDeduplicated() {
+        return deduplicated.sum();
+    }
+
+    /** Fraction of calls that did not reach the target. */
+    public double getHitRate() {
+        long saved = getHits() + getDeduplicated();
+        long total = saved + getMisses();
+        return total == 0 ? 0 : (double) saved / total;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d deduplicated=%d hitRate=%.2f size=%d", getHits(), getMisses(),
+                getDeduplicated(), getHitRate(), size());
+    }
+}
@@ -1,22 +1,111 @@
 package architectures.rpc.server;
 
-import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import architectures.rpc.Calculator;
 
 /**
  * This class creates an instance of the CalculatorImpl class, registers it with
  * the RMI registry, and binds it to a name (CalculatorService).
+ * 
+ * Run it with an argument N to start N instances in this JVM, each with its own
+ * registry on ports 1099, 1100, ... 1099 + N - 1. The client can then spread
+ * its calls over them with a LoadBalancer.
+ * 
+ * Start it with -Drpc.metrics.interval=N to print the call metrics every N
+ * seconds, and with -Drpc.cache.size=N (and optionally
+ * -Drpc.cache.eviction=LRU|FIFO) to put a RemoteCache in front of the
+ * calculator.
  */
 
 public class Server {
+    public static final int BASE_PORT = 1099;
+    public static final String NAME = "CalculatorService";
+
+    private final int port;
+    private CalculatorImpl calculator;
+    private Calculator service;
+    private Registry registry;
+
+    public Server(int port) {
+        this.port = port;
+    }
+
+    public static String url(int port) {
+        return "rmi://localhost:" + port + "/" + NAME;
+    }
+
+    public void start() throws RemoteException {
+        calculator = new CalculatorImpl();
+        service = calculator;
+        int cacheSize = Integer.getInteger("rpc.cache.size", 0);
+        if (cacheSize > 0) {
+            RemoteCache.Eviction eviction = RemoteCache.Eviction
+                    .valueOf(System.getProperty("rpc.cache.eviction", "LRU"));
+            service = RemoteCache.wrap(Calculator.class, calculator, cacheSize, eviction);
+            // The proxy is not a UnicastRemoteObject, so it has to be exported by hand.
+            UnicastRemoteObject.exportObject(service, 0);
+        }
+        registry = LocateRegistry.createRegistry(port);
+        registry.rebind(NAME, service);
+    }
+
+    /** Simulates a crash: the calculator and its registry stop answering. */
+    public void stop() throws NoSuchObjectException {
+        unexport(service);
+        if (service != calculator) {
+            unexport(calculator);
+        }
+        unexport(registry);
+    }
+
+    private static void unexport(Remote remote) throws NoSuchObjectException {
+        UnicastRemoteObject.unexportObject(remote, true);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public CallMetrics getMetrics() {
+        return calculator.getMetrics();
+    }
+
+    public void printMetrics() {
+        System.out.print("[" + port + "]\n" + calculator.getMetrics());
+        if (service != calculator) {
+            System.out.println("cache: " + RemoteCache.of(service));
+        }
+    }
+
     public static void main(String[] args) {
         try {
-            Calculator c = new CalculatorImpl();
-            LocateRegistry.createRegistry(1099);
-            Naming.rebind("CalculatorService", c);
+            int instances = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+            List<Server> servers = new ArrayList<>();
+            for (int i = 0; i < instances; i++) {
+                Server server = new Server(BASE_PORT + i);
+                server.start();
+                servers.add(server);
+                System.out.println("Bound " + url(server.getPort()));
+            }
             System.out.println("Server running waiting to calculate!...");
+
+            int interval = Integer.getInteger("rpc.metrics.interval", 0);
+            if (interval > 0) {
+                ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+                scheduler.scheduleAtFixedRate(() -> servers.forEach(Server::printMetrics), interval, interval,
+                        TimeUnit.SECONDS);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }